@@ -0,0 +1,81 @@
+package io.henneberger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * SimpleBlock parsing, header included, for each lacing mode: one block per operation. Laced
+ * blocks carry {@link #FRAMES} small frames, as audio does; unlaced ones a single frame.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BlockBenchmark {
+
+  private static final int BLOCKS = 1024;
+  private static final int FRAMES = 8;
+  private static final int FRAME_SIZE = 300;
+
+  @Param({"none", "xiph", "ebml", "fixed"})
+  public String lacing;
+
+  private ByteBuffer blocks;
+  private WebMDecoder decoder;
+  private long payloadBytes;
+
+  @Setup
+  public void setUp() {
+    int mode;
+    switch (lacing) {
+      case "xiph":
+        mode = Fixtures.XIPH_LACING;
+        break;
+      case "ebml":
+        mode = Fixtures.EBML_LACING;
+        break;
+      case "fixed":
+        mode = Fixtures.FIXED_LACING;
+        break;
+      default:
+        mode = Fixtures.NO_LACING;
+    }
+    blocks = Fixtures.simpleBlocks(mode, BLOCKS, FRAMES, FRAME_SIZE);
+    decoder = new WebMDecoder(new WebMHandler() {
+      @Override
+      public void onSimpleBlock(long trackNumber, int relativeTimecode, int flags,
+          ByteBuffer payload) {
+        payloadBytes += payload.remaining();
+      }
+    });
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BLOCKS)
+  public long simpleBlocks() throws IOException {
+    ByteBuffer buf = blocks;
+    buf.rewind();
+    payloadBytes = 0;
+    while (buf.hasRemaining()) {
+      long id = WebMDecoder.readElementId(buf);
+      long size = WebMDecoder.readElementSize(buf);
+      decoder.parseElement(id, size, buf);
+    }
+    return payloadBytes;
+  }
+}
@@ -0,0 +1,129 @@
+package io.henneberger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Whole-file decoding of generated files. Both benchmarks parse every element and block header;
+ * {@code decode} also reads every byte of each block payload, {@code skipPayloads} leaves the
+ * payload views unread. The primary score is the time per file; the {@code elements} counter,
+ * the elements reported to the handler, gives ns/element, and with {@code -bm thrpt -tu us} the
+ * {@code bytes} counter gives MB/s.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DecodeBenchmark {
+
+  /**
+   * File size in MB.
+   */
+  @Param({"1", "16", "64"})
+  public int size;
+
+  private ByteBuffer file;
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class Counters {
+
+    public long elements;
+    public long bytes;
+
+    @Setup(Level.Iteration)
+    public void clear() {
+      elements = 0;
+      bytes = 0;
+    }
+  }
+
+  @Setup
+  public void setUp() throws IOException {
+    file = Fixtures.file(size * 1024L * 1024L).asReadOnlyBuffer();
+  }
+
+  @Benchmark
+  public long decode(Counters counters) throws IOException {
+    CountingHandler handler = new CountingHandler(true);
+    new WebMDecoder(handler).decode(file.duplicate());
+    counters.elements += handler.elements;
+    counters.bytes += file.capacity();
+    return handler.payloadSum;
+  }
+
+  @Benchmark
+  public long skipPayloads(Counters counters) throws IOException {
+    CountingHandler handler = new CountingHandler(false);
+    new WebMDecoder(handler).decode(file.duplicate());
+    counters.elements += handler.elements;
+    counters.bytes += file.capacity();
+    return handler.elements;
+  }
+
+  /**
+   * Counts every callback but the Segment start, and sums the payload bytes if asked to.
+   */
+  private static final class CountingHandler implements WebMHandler {
+
+    private final boolean readPayloads;
+    long elements;
+    long payloadSum;
+
+    CountingHandler(boolean readPayloads) {
+      this.readPayloads = readPayloads;
+    }
+
+    @Override
+    public void onEbmlHeader(EbmlHeader header) {
+      elements++;
+    }
+
+    @Override
+    public void onSegmentInfo(SegmentInfo info) {
+      elements++;
+    }
+
+    @Override
+    public void onTrackEntry(TrackEntry track) {
+      elements++;
+    }
+
+    @Override
+    public void onClusterStart(long timecode) {
+      elements++;
+    }
+
+    @Override
+    public void onSimpleBlock(long trackNumber, int relativeTimecode, int flags,
+        ByteBuffer payload) {
+      elements++;
+      if (readPayloads) {
+        for (int i = payload.position(); i < payload.limit(); i++) {
+          payloadSum += payload.get(i);
+        }
+      }
+    }
+
+    @Override
+    public void onCuePoint(long cueTime, long cueTrack, long cueClusterPosition) {
+      elements++;
+    }
+  }
+}
@@ -0,0 +1,230 @@
+package io.henneberger;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Fan-out of one chunk from the streamer to every viewer of a {@link LiveStream}, one chunk per
+ * operation, so {@code gc.alloc.rate.norm} from {@code -prof gc} is the allocation per chunk.
+ * Viewers write to {@link EmbeddedChannel}s that release what reaches the end of the pipeline, as a
+ * socket would once it is sent, and never fill up.
+ *
+ * <ul>
+ *   <li>{@code ingest} is what the streamer's loop does for a chunk: encode the frame once, parse,
+ *       publish to the ring and drain every viewer.
+ *   <li>{@code iterateViewers} only walks a set of the viewers and reads the cursor of each.
+ *   <li>{@code writeToViewers} only writes and flushes a frame to each viewer.
+ * </ul>
+ *
+ * <p>Both walk the set in the order {@code ingest} does. With thousands of viewers that order is
+ * scattered in memory, so the cache misses of the real loop are part of what is measured.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dio.netty.leakDetection.level=disabled")
+@State(Scope.Thread)
+public class FanOutBenchmark {
+
+  // Enough one-second Clusters that the ring wraps while measuring
+  private static final long STREAM_SIZE = 8 * 1024 * 1024;
+  // Chunk size of the streamer, about 100 ms of the stream
+  private static final int CHUNK_SIZE = 16 * 1024;
+
+  @Param({"1", "100", "1000", "10000"})
+  public int viewers;
+
+  private LiveStream stream;
+  private final Set<Viewer> viewerSet = new HashSet<>();
+  // The stream from its first Cluster on, sent over and over
+  private final List<Buffer> chunks = new ArrayList<>();
+  private int next;
+  private ByteBuf frame;
+
+  @Setup
+  public void setUp() throws IOException {
+    Buffer bytes = Buffer.buffer(Fixtures.stream(STREAM_SIZE).array());
+    long[] firstCluster = {-1};
+    WebMStreamParser[] parser = new WebMStreamParser[1];
+    parser[0] = new WebMStreamParser(new WebMHandler() {
+      @Override
+      public void onClusterStart(long timecode) {
+        if (firstCluster[0] < 0) {
+          firstCluster[0] = parser[0].clusterPosition();
+        }
+      }
+    });
+    parser[0].feed(bytes);
+    int start = (int) firstCluster[0];
+    for (int i = start; i < bytes.length(); i += CHUNK_SIZE) {
+      chunks.add(bytes.getBuffer(i, Math.min(i + CHUNK_SIZE, bytes.length())));
+    }
+
+    // Viewers join once the init segment and a keyframe Cluster are in, and are in sync from then
+    stream = new LiveStream("bench");
+    ingest(bytes.getBuffer(0, start));
+    for (int i = 0; i < chunks.size(); i++) {
+      ingest(nextChunk());
+    }
+    for (int i = 0; i < viewers; i++) {
+      SinkViewer viewer = new SinkViewer();
+      stream.addViewer(viewer, null);
+      viewerSet.add(viewer);
+    }
+    frame = WebSocketViewer.binaryFrame(chunks.get(0));
+  }
+
+  @TearDown
+  public void tearDown() {
+    stream.close();
+    frame.release();
+  }
+
+  @Benchmark
+  public void ingest() throws IOException {
+    ingest(nextChunk());
+  }
+
+  @Benchmark
+  public void iterateViewers(Blackhole blackhole) {
+    for (Viewer viewer : viewerSet) {
+      blackhole.consume(viewer.cursor());
+    }
+  }
+
+  @Benchmark
+  public void writeToViewers() {
+    int length = chunks.get(0).length();
+    for (Viewer viewer : viewerSet) {
+      viewer.writeChunk(frame, length);
+      viewer.flush();
+    }
+  }
+
+  private Buffer nextChunk() {
+    Buffer chunk = chunks.get(next);
+    next = next + 1 < chunks.size() ? next + 1 : 0;
+    return chunk;
+  }
+
+  /**
+   * As {@link Broadcast#ingest} does on the streamer's loop.
+   */
+  private void ingest(Buffer data) throws IOException {
+    ByteBuf encoded = WebSocketViewer.binaryFrame(data);
+    try {
+      stream.ingest(data, encoded, System.nanoTime());
+    } finally {
+      encoded.release();
+    }
+  }
+
+  /**
+   * Releases every write, standing in for the socket at the head of a viewer's pipeline.
+   */
+  @ChannelHandler.Sharable
+  private static final class Sink extends ChannelOutboundHandlerAdapter {
+
+    static final Sink INSTANCE = new Sink();
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+      ReferenceCountUtil.release(msg);
+      promise.trySuccess();
+    }
+  }
+
+  /**
+   * A viewer that writes as {@link WebSocketViewer} does, from the context of a handler after the
+   * {@link Sink}.
+   */
+  private static final class SinkViewer extends Viewer {
+
+    private final ChannelHandlerContext channel;
+
+    SinkViewer() {
+      EmbeddedChannel embedded = new EmbeddedChannel(Sink.INSTANCE,
+          new ChannelInboundHandlerAdapter());
+      channel = embedded.pipeline().lastContext();
+    }
+
+    @Override
+    boolean writeQueueFull() {
+      return !channel.channel().isWritable();
+    }
+
+    @Override
+    String transport() {
+      return "embedded";
+    }
+
+    @Override
+    long queuedBytes() {
+      return queuedBytes(channel);
+    }
+
+    @Override
+    void drainHandler(Handler<Void> handler) {
+    }
+
+    @Override
+    void close() {
+      channel.close();
+    }
+
+    @Override
+    void writeType(String mimeType) {
+      channel.writeAndFlush(mimeType, channel.voidPromise());
+    }
+
+    @Override
+    void write(Buffer bytes) {
+      channel.writeAndFlush(bytes.getByteBuf().retainedDuplicate(), channel.voidPromise());
+    }
+
+    @Override
+    void writeChunk(ByteBuf frame, int length) {
+      channel.write(frame.retainedDuplicate(), channel.voidPromise());
+    }
+
+    @Override
+    void flush() {
+      channel.flush();
+    }
+
+    @Override
+    void sendFile(File file, long offset, long length) {
+      channel.writeAndFlush(new DefaultFileRegion(file, offset, length), channel.voidPromise());
+    }
+  }
+}
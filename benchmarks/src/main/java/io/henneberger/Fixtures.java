@@ -0,0 +1,171 @@
+package io.henneberger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * Builds EBML fixtures for the benchmarks.
+ */
+final class Fixtures {
+
+  // Lacing modes, as in the SimpleBlock flags
+  static final int NO_LACING = 0;
+  static final int XIPH_LACING = 1;
+  static final int FIXED_LACING = 2;
+  static final int EBML_LACING = 3;
+
+  private Fixtures() {
+  }
+
+  /**
+   * SimpleBlock elements back to back, headers included, on track 1.
+   *
+   * @param frames frames per block, ignored without lacing
+   * @param frameSize average frame size; sizes vary by up to half of it except with fixed lacing
+   */
+  static ByteBuffer simpleBlocks(int lacing, int blocks, int frames, int frameSize) {
+    Random random = new Random(42);
+    int count = lacing == NO_LACING ? 1 : frames;
+    ByteBuffer out = ByteBuffer.allocate(blocks * (count * (frameSize * 3 / 2 + 8) + 32));
+    ByteBuffer body = ByteBuffer.allocate(count * (frameSize * 3 / 2 + 8) + 16);
+    int[] sizes = new int[count];
+    for (int b = 0; b < blocks; b++) {
+      int total = 0;
+      for (int i = 0; i < count; i++) {
+        sizes[i] = lacing == FIXED_LACING ? frameSize
+            : frameSize / 2 + random.nextInt(frameSize + 1);
+        total += sizes[i];
+      }
+      body.clear();
+      body.put((byte) 0x81); // track 1
+      body.putShort((short) b);
+      body.put((byte) (WebMHandler.KEYFRAME | lacing << 1));
+      if (lacing != NO_LACING) {
+        body.put((byte) (count - 1));
+      }
+      if (lacing == XIPH_LACING) {
+        for (int i = 0; i < count - 1; i++) {
+          int size = sizes[i];
+          for (; size >= 255; size -= 255) {
+            body.put((byte) 255);
+          }
+          body.put((byte) size);
+        }
+      } else if (lacing == EBML_LACING) {
+        putSize(body, sizes[0]);
+        for (int i = 1; i < count - 1; i++) {
+          putSigned(body, sizes[i] - sizes[i - 1]);
+        }
+      }
+      for (int i = 0; i < total; i++) {
+        body.put((byte) i);
+      }
+      body.flip();
+      putId(out, WebMDecoder.SIMPLE_BLOCK);
+      putSize(out, body.remaining());
+      out.put(body);
+    }
+    out.flip();
+    return out;
+  }
+
+  /**
+   * A finished WebM file of at least {@code size} bytes: one-second Clusters, each with 30 video
+   * frames starting with a keyframe and 50 audio frames, interleaved.
+   */
+  static ByteBuffer file(long size) throws IOException {
+    Path path = Files.createTempFile("fixture", ".webm");
+    try {
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+        WebMWriter writer = new WebMWriter(channel);
+        write(writer, size);
+        writer.finish();
+      }
+      return ByteBuffer.wrap(Files.readAllBytes(path));
+    } finally {
+      Files.delete(path);
+    }
+  }
+
+  /**
+   * The same as {@link #file} as a live encoder sends it: an unknown-size Segment without Cues.
+   */
+  static ByteBuffer stream(long size) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    WebMWriter writer = new WebMWriter(Channels.newChannel(out));
+    write(writer, size);
+    writer.finish();
+    return ByteBuffer.wrap(out.toByteArray());
+  }
+
+  private static void write(WebMWriter writer, long size) throws IOException {
+    Random random = new Random(42);
+    writer.writeEbmlHeader();
+    writer.startSegment();
+    writer.writeSegmentInfo(new WebMHandler.SegmentInfo());
+    writer.writeTracks(track(1, WebMHandler.TrackEntry.VIDEO, "V_VP9"),
+        track(2, WebMHandler.TrackEntry.AUDIO, "A_OPUS"));
+    ByteBuffer frame = ByteBuffer.allocate(40000);
+    for (int cluster = 0; writer.position() < size; cluster++) {
+      writer.startCluster(cluster * 1000L);
+      for (int video = 0, audio = 0; video < 30 || audio < 50; ) {
+        if (audio * 30 < video * 50 || video == 30) {
+          frame.clear().limit(100 + random.nextInt(200));
+          writer.writeSimpleBlock(2, audio * 20, WebMHandler.KEYFRAME, frame);
+          audio++;
+        } else {
+          frame.clear().limit(video == 0 ? 30000 : 1000 + random.nextInt(8000));
+          writer.writeSimpleBlock(1, video * 33, video == 0 ? WebMHandler.KEYFRAME : 0, frame);
+          video++;
+        }
+      }
+    }
+  }
+
+  private static WebMHandler.TrackEntry track(long number, int type, String codecId) {
+    WebMHandler.TrackEntry track = new WebMHandler.TrackEntry();
+    track.trackNumber = number;
+    track.trackType = type;
+    track.codecId = codecId;
+    return track;
+  }
+
+  static void putId(ByteBuffer buf, int id) {
+    int length = 4 - Integer.numberOfLeadingZeros(id) / 8;
+    for (int i = length - 1; i >= 0; i--) {
+      buf.put((byte) (id >>> (8 * i)));
+    }
+  }
+
+  static void putSize(ByteBuffer buf, long size) {
+    int length = 1;
+    while (size >= (1L << (7 * length)) - 1) {
+      length++;
+    }
+    long value = size | (1L << (7 * length));
+    for (int i = length - 1; i >= 0; i--) {
+      buf.put((byte) (value >>> (8 * i)));
+    }
+  }
+
+  /**
+   * A signed VINT as in EBML lacing: the value plus a bias of half the range of its length.
+   */
+  static void putSigned(ByteBuffer buf, long value) {
+    int length = 1;
+    while (Math.abs(value) >= (1L << (7 * length - 1)) - 1) {
+      length++;
+    }
+    long encoded = (value + (1L << (7 * length - 1)) - 1) | (1L << (7 * length));
+    for (int i = length - 1; i >= 0; i--) {
+      buf.put((byte) (encoded >>> (8 * i)));
+    }
+  }
+}
@@ -0,0 +1,63 @@
+package io.henneberger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Element header throughput: one ID plus one data size per operation, over a mix of the ID and
+ * size lengths found in real WebM files.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class VintBenchmark {
+
+  private static final int HEADERS = 4096;
+  private static final int[] IDS = {
+      WebMDecoder.SIMPLE_BLOCK, WebMDecoder.SIMPLE_BLOCK, WebMDecoder.SIMPLE_BLOCK,
+      WebMDecoder.TIMESTAMP, WebMDecoder.TRACK_NUMBER, WebMDecoder.EBML_VERSION,
+      WebMDecoder.TIMESTAMP_SCALE, WebMDecoder.CLUSTER};
+
+  private ByteBuffer headers;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(42);
+    headers = ByteBuffer.allocate(HEADERS * 12);
+    for (int i = 0; i < HEADERS; i++) {
+      int id = IDS[random.nextInt(IDS.length)];
+      Fixtures.putId(headers, id);
+      Fixtures.putSize(headers, id == WebMDecoder.CLUSTER ? 1 << 20 : random.nextInt(40000));
+    }
+    headers.flip();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(HEADERS)
+  public long elementHeaders() throws IOException {
+    ByteBuffer buf = headers;
+    buf.rewind();
+    long sum = 0;
+    while (buf.hasRemaining()) {
+      sum += WebMDecoder.readElementId(buf);
+      sum += WebMDecoder.readElementSize(buf);
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,85 @@
+package io.henneberger;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts of values in log-linear buckets, 16 per power of two, so percentiles are within about
+ * 6%. Safe to record into from any thread.
+ */
+final class Histogram {
+
+  private static final int SUB_BUCKETS = 16;
+
+  private final AtomicLongArray counts = new AtomicLongArray(64 * SUB_BUCKETS);
+
+  void record(long value) {
+    counts.incrementAndGet(bucket(Math.max(0, value)));
+  }
+
+  /**
+   * Takes the counts recorded so far, leaving this empty.
+   */
+  Snapshot reset() {
+    long[] taken = new long[counts.length()];
+    for (int i = 0; i < taken.length; i++) {
+      taken[i] = counts.getAndSet(i, 0);
+    }
+    return new Snapshot(taken);
+  }
+
+  private static int bucket(long value) {
+    int shift = Math.max(0, 64 - Long.numberOfLeadingZeros(value) - 5);
+    return shift * SUB_BUCKETS + (int) (value >>> shift);
+  }
+
+  /**
+   * The largest value in {@code bucket}.
+   */
+  private static long highest(int bucket) {
+    int shift = bucket < 2 * SUB_BUCKETS ? 0 : bucket / SUB_BUCKETS - 1;
+    return ((long) (bucket - shift * SUB_BUCKETS + 1) << shift) - 1;
+  }
+
+  static final class Snapshot {
+
+    private final long[] counts;
+    private long total;
+
+    Snapshot(long[] counts) {
+      this.counts = counts;
+      for (long count : counts) {
+        total += count;
+      }
+    }
+
+    long count() {
+      return total;
+    }
+
+    /**
+     * The value below which {@code percentile} percent of the values are, or 0 if there are none.
+     */
+    long percentile(double percentile) {
+      long rank = (long) Math.ceil(total * percentile / 100);
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= rank && seen > 0) {
+          return highest(i);
+        }
+      }
+      return 0;
+    }
+
+    long max() {
+      return percentile(100);
+    }
+
+    void add(Snapshot other) {
+      for (int i = 0; i < counts.length; i++) {
+        counts[i] += other.counts[i];
+      }
+      total += other.total;
+    }
+  }
+}
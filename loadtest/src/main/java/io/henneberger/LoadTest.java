@@ -0,0 +1,229 @@
+package io.henneberger;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.WebSocket;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load test of {@link StreamingServer}: replays a WebM file into {@code /stream/{id}} in real time
+ * and opens more and more {@code /watch/{id}} clients in this JVM, printing a line for each step of
+ * the ramp. Each line has the latency from a Cluster being sent to a viewer receiving it, the bytes
+ * received per second by all viewers, how long new viewers took to get their first Cluster, and
+ * the CPU used by the server and by this process, in percent of one core.
+ *
+ * <p>Unless {@code --host} is given, the server is started as a child process from this class
+ * path, so its CPU can be told apart from the load generator's.
+ *
+ * <pre>
+ * java -jar target/loadtest.jar file.webm --viewers=2000 --step=200 --step-seconds=10
+ * </pre>
+ */
+public class LoadTest {
+
+  private static final int MAX_MESSAGE_SIZE = 10 * 1024 * 1024;
+
+  final Replay replay;
+  final Histogram latency = new Histogram();
+  final Histogram joinTime = new Histogram();
+  final LongAdder bytesReceived = new LongAdder();
+  final LongAdder joined = new LongAdder();
+  final LongAdder closed = new LongAdder();
+  final LongAdder resyncs = new LongAdder();
+  final LongAdder unmatched = new LongAdder();
+
+  private LoadTest(Replay replay) {
+    this.replay = replay;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new HashMap<>();
+    String file = null;
+    for (String arg : args) {
+      if (arg.startsWith("--") && arg.indexOf('=') > 2) {
+        options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+      } else if (file == null && !arg.startsWith("--")) {
+        file = arg;
+      } else {
+        usage("Unknown argument " + arg);
+      }
+    }
+    if (file == null) {
+      usage("No file to replay");
+    }
+    int viewers = Integer.parseInt(options.getOrDefault("viewers", "1000"));
+    int step = Integer.parseInt(options.getOrDefault("step", "100"));
+    long stepSeconds = Long.parseLong(options.getOrDefault("step-seconds", "10"));
+    int port = Integer.parseInt(options.getOrDefault("port", "8080"));
+    String stream = options.getOrDefault("stream", "load");
+    String host = options.get("host");
+
+    Process server = null;
+    long serverPid = Long.parseLong(options.getOrDefault("server-pid", "-1"));
+    if (host == null) {
+      host = "localhost";
+      server = startServer(options.get("instances"));
+      serverPid = server.pid();
+    }
+
+    Replay replay = new Replay(Buffer.buffer(Files.readAllBytes(Paths.get(file))));
+    System.out.printf("Replaying %s: %d byte init segment, %.1f s%n", file, replay.init.length(),
+        replay.seconds());
+    Vertx vertx = Vertx.vertx();
+    HttpClient client = vertx.createHttpClient(new HttpClientOptions()
+        .setDefaultHost(host)
+        .setDefaultPort(port)
+        .setMaxWebSockets(Integer.MAX_VALUE)
+        .setMaxWebSocketFrameSize(MAX_MESSAGE_SIZE)
+        .setMaxWebSocketMessageSize(MAX_MESSAGE_SIZE));
+    try {
+      waitForServer(client, server);
+      new LoadTest(replay).run(vertx, client, stream, viewers, step, stepSeconds, serverPid);
+    } finally {
+      vertx.close();
+      if (server != null) {
+        server.destroy();
+      }
+    }
+    System.exit(0);
+  }
+
+  private void run(Vertx vertx, HttpClient client, String stream, int viewers, int step,
+      long stepSeconds, long serverPid) throws Exception {
+    WebSocket streamer = client.webSocket("/stream/" + stream)
+        .toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+    replay.start(vertx, streamer);
+
+    System.out.printf("%8s %8s %7s %10s %9s %9s %9s %9s %9s %9s %9s %7s %7s%n", "viewers",
+        "joined", "resyncs", "recv MB/s", "lat p50", "lat p90", "lat p99", "lat p99.9",
+        "lat max", "join p50", "join p99", "server", "client");
+    System.out.printf("%8s %8s %7s %10s %9s %9s %9s %9s %9s %9s %9s %7s %7s%n", "", "", "", "",
+        "ms", "ms", "ms", "ms", "ms", "ms", "ms", "cpu %", "cpu %");
+    Histogram.Snapshot allLatency = latency.reset();
+    Histogram.Snapshot allJoins = joinTime.reset();
+    long serverCpu = cpuNanos(serverPid);
+    long clientCpu = cpuNanos(ProcessHandle.current().pid());
+    long received = 0;
+    long time = System.nanoTime();
+    int opened = 0;
+    while (opened < viewers) {
+      for (int i = 0; i < step && opened < viewers; i++, opened++) {
+        LoadViewer viewer = new LoadViewer(this);
+        client.webSocket("/watch/" + stream, socket -> {
+          if (socket.succeeded()) {
+            viewer.connected(socket.result());
+          } else {
+            closed.increment();
+          }
+        });
+      }
+      Thread.sleep(stepSeconds * 1000);
+
+      long now = System.nanoTime();
+      long nowServerCpu = cpuNanos(serverPid);
+      long nowClientCpu = cpuNanos(ProcessHandle.current().pid());
+      long nowReceived = bytesReceived.sum();
+      Histogram.Snapshot stepLatency = latency.reset();
+      Histogram.Snapshot stepJoins = joinTime.reset();
+      allLatency.add(stepLatency);
+      allJoins.add(stepJoins);
+      double seconds = (now - time) / 1e9;
+      System.out.printf("%8d %8d %7d %10.2f %9.1f %9.1f %9.1f %9.1f %9.1f %9.1f %9.1f %7s %7s%n",
+          opened, joined.sum(), resyncs.sum(), (nowReceived - received) / seconds / 1e6,
+          stepLatency.percentile(50) / 1e3, stepLatency.percentile(90) / 1e3,
+          stepLatency.percentile(99) / 1e3, stepLatency.percentile(99.9) / 1e3,
+          stepLatency.max() / 1e3, stepJoins.percentile(50) / 1e3,
+          stepJoins.percentile(99) / 1e3, percent(serverCpu, nowServerCpu, now - time),
+          percent(clientCpu, nowClientCpu, now - time));
+      time = now;
+      serverCpu = nowServerCpu;
+      clientCpu = nowClientCpu;
+      received = nowReceived;
+    }
+    replay.stop();
+
+    System.out.printf("%nOverall: %d of %d viewers joined, %d closed, %d skipped ahead, %d"
+            + " messages not matched to a Cluster sent%n", joined.sum(), viewers, closed.sum(),
+        resyncs.sum(), unmatched.sum());
+    System.out.printf("Latency ms: p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f over %d"
+            + " Clusters received%n", allLatency.percentile(50) / 1e3,
+        allLatency.percentile(90) / 1e3, allLatency.percentile(99) / 1e3,
+        allLatency.percentile(99.9) / 1e3, allLatency.max() / 1e3, allLatency.count());
+    System.out.printf("Join ms: p50 %.1f, p99 %.1f, max %.1f%n", allJoins.percentile(50) / 1e3,
+        allJoins.percentile(99) / 1e3, allJoins.max() / 1e3);
+  }
+
+  /**
+   * Starts {@link StreamingServer} in a new JVM with the same class path.
+   */
+  private static Process startServer(String instances) throws Exception {
+    List<String> command = new ArrayList<>(List.of(
+        Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+        "-cp", System.getProperty("java.class.path"), StreamingServer.class.getName()));
+    if (instances != null) {
+      command.add(instances);
+    }
+    Process server = new ProcessBuilder(command).inheritIO().start();
+    Runtime.getRuntime().addShutdownHook(new Thread(server::destroy));
+    return server;
+  }
+
+  /**
+   * Waits for the server to answer on {@code /metrics}.
+   */
+  private static void waitForServer(HttpClient client, Process server) throws Exception {
+    for (int attempt = 0; attempt < 100; attempt++) {
+      CompletableFuture<Integer> status = new CompletableFuture<>();
+      client.request(HttpMethod.GET, "/metrics")
+          .compose(request -> request.send())
+          .onComplete(response -> status.complete(
+              response.succeeded() ? response.result().statusCode() : -1));
+      if (status.get(10, TimeUnit.SECONDS) == 200) {
+        return;
+      }
+      if (server != null && !server.isAlive()) {
+        throw new IllegalStateException("Server exited with " + server.exitValue());
+      }
+      Thread.sleep(100);
+    }
+    throw new IllegalStateException("Server did not start");
+  }
+
+  /**
+   * CPU time used by process {@code pid} so far, or -1 if not known.
+   */
+  private static long cpuNanos(long pid) {
+    if (pid < 0) {
+      return -1;
+    }
+    return ProcessHandle.of(pid)
+        .flatMap(process -> process.info().totalCpuDuration())
+        .map(Duration::toNanos)
+        .orElse(-1L);
+  }
+
+  private static String percent(long startCpuNanos, long endCpuNanos, long wallNanos) {
+    return startCpuNanos < 0 || endCpuNanos < 0 ? "-"
+        : String.format("%.0f", 100.0 * (endCpuNanos - startCpuNanos) / wallNanos);
+  }
+
+  private static void usage(String problem) {
+    System.err.println(problem);
+    System.err.println("Usage: LoadTest <file.webm> [--viewers=1000] [--step=100]"
+        + " [--step-seconds=10] [--stream=load] [--port=8080] [--instances=<server instances>]"
+        + " [--host=<running server> [--server-pid=<its pid>]]");
+    System.exit(2);
+  }
+}
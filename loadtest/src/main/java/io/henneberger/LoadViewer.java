@@ -0,0 +1,68 @@
+package io.henneberger;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.WebSocket;
+
+/**
+ * A {@code /watch} client that only measures. Every binary message after the init segment should
+ * be a Cluster the {@link Replay} sent, whole: the first one is looked up in what was sent, the
+ * rest are expected to follow it, until the server says the viewer was skipped ahead. Confined to
+ * the loop of its socket.
+ */
+final class LoadViewer {
+
+  // How many of the latest Clusters sent to look through for the one received
+  private static final int FIND_WINDOW = 64;
+
+  private final LoadTest test;
+  private final long connecting = System.nanoTime();
+  private boolean initReceived;
+  private boolean joined;
+  // Sequence number of the next Cluster expected, or -1 while out of sync
+  private long expected = -1;
+
+  LoadViewer(LoadTest test) {
+    this.test = test;
+  }
+
+  void connected(WebSocket socket) {
+    socket.binaryMessageHandler(this::received);
+    socket.textMessageHandler(text -> {
+      if (initReceived) {
+        test.resyncs.increment();
+        expected = -1;
+      }
+    });
+    socket.closeHandler(v -> test.closed.increment());
+  }
+
+  private void received(Buffer message) {
+    long now = System.nanoTime();
+    test.bytesReceived.add(message.length());
+    if (!initReceived) {
+      initReceived = true;
+      return;
+    }
+    Replay replay = test.replay;
+    long sequence = expected;
+    if (sequence < 0 || sequence >= replay.sent() || sequence < replay.sent() - Replay.HISTORY
+        || replay.cluster(sequence).length() != message.length()) {
+      sequence = replay.find(message, FIND_WINDOW);
+    }
+    if (sequence < 0) {
+      test.unmatched.increment();
+      expected = -1;
+      return;
+    }
+    // The first Cluster after joining or skipping ahead was sent before, it is waiting in the ring
+    if (expected >= 0) {
+      test.latency.record((now - replay.sentNanos(sequence)) / 1000);
+    }
+    expected = sequence + 1;
+    if (!joined) {
+      joined = true;
+      test.joined.increment();
+      test.joinTime.record((now - connecting) / 1000);
+    }
+  }
+}
@@ -0,0 +1,142 @@
+package io.henneberger;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.WebSocket;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A recorded WebM file sent to {@code /stream} one Cluster per message, each when its timecode
+ * comes up, as a live encoder would. The file starts over when it ends, with the same timecodes.
+ *
+ * <p>What was sent when is kept for the last {@link #HISTORY} Clusters, for viewers to work out
+ * how long each took to reach them. The history is written on the streamer's loop and read from
+ * the viewers' loops; {@link #sent} is only advanced once a send is recorded.
+ */
+final class Replay {
+
+  static final int HISTORY = 1024;
+
+  private static final long TICK_MILLIS = 5;
+
+  final Buffer init;
+  private final List<Buffer> clusters = new ArrayList<>();
+  // When each Cluster is due, in nanoseconds from the start of the file
+  private final List<Long> due = new ArrayList<>();
+  private final long lengthNanos;
+
+  private final int[] sentCluster = new int[HISTORY];
+  private final long[] sentNanos = new long[HISTORY];
+  private volatile long sent;
+
+  private Vertx vertx;
+  private WebSocket socket;
+  private long started;
+  private long next;
+  private long timer = -1;
+
+  Replay(Buffer file) throws IOException {
+    List<Long> positions = new ArrayList<>();
+    List<Long> timecodes = new ArrayList<>();
+    long[] scale = {1000000};
+    WebMStreamParser[] parser = new WebMStreamParser[1];
+    parser[0] = new WebMStreamParser(new WebMHandler() {
+      @Override
+      public void onSegmentInfo(SegmentInfo info) {
+        scale[0] = info.timestampScale;
+      }
+
+      @Override
+      public void onClusterStart(long timecode) {
+        positions.add(parser[0].clusterPosition());
+        timecodes.add(timecode);
+      }
+    });
+    parser[0].feed(file);
+    if (positions.isEmpty()) {
+      throw new IOException("No Clusters");
+    }
+    init = file.getBuffer(0, positions.get(0).intValue());
+    long first = timecodes.get(0);
+    for (int i = 0; i < positions.size(); i++) {
+      long end = i + 1 < positions.size() ? positions.get(i + 1) : file.length();
+      clusters.add(file.getBuffer(positions.get(i).intValue(), (int) end));
+      due.add((timecodes.get(i) - first) * scale[0]);
+    }
+    int last = due.size() - 1;
+    lengthNanos = due.get(last) + (last > 0 ? due.get(last) - due.get(last - 1) : 1000000000L);
+  }
+
+  double seconds() {
+    return lengthNanos / 1e9;
+  }
+
+  /**
+   * Sends the init segment, then Clusters in real time until {@link #stop()}.
+   */
+  void start(Vertx vertx, WebSocket socket) {
+    this.vertx = vertx;
+    this.socket = socket;
+    socket.writeBinaryMessage(init);
+    started = System.nanoTime();
+    timer = vertx.setPeriodic(TICK_MILLIS, id -> sendDue());
+  }
+
+  void stop() {
+    if (socket != null) {
+      vertx.cancelTimer(timer);
+      socket.close();
+    }
+  }
+
+  private void sendDue() {
+    long now = System.nanoTime();
+    while (true) {
+      int cluster = (int) (next % clusters.size());
+      long loop = next / clusters.size();
+      if (started + loop * lengthNanos + due.get(cluster) > now) {
+        return;
+      }
+      int slot = (int) (next % HISTORY);
+      sentCluster[slot] = cluster;
+      sentNanos[slot] = System.nanoTime();
+      sent = ++next;
+      socket.writeBinaryMessage(clusters.get(cluster));
+    }
+  }
+
+  /**
+   * Number of Clusters sent so far, the sequence number of the next one.
+   */
+  long sent() {
+    return sent;
+  }
+
+  /**
+   * The Cluster sent as {@code sequence}, which must be one of the last {@link #HISTORY} sent.
+   */
+  Buffer cluster(long sequence) {
+    return clusters.get(sentCluster[(int) (sequence % HISTORY)]);
+  }
+
+  long sentNanos(long sequence) {
+    return sentNanos[(int) (sequence % HISTORY)];
+  }
+
+  /**
+   * Sequence number of the Cluster sent most recently that is {@code bytes}, or -1. Searches the
+   * last {@code window} sent.
+   */
+  long find(Buffer bytes, int window) {
+    long latest = sent;
+    for (long s = latest - 1; s >= 0 && s >= latest - window; s--) {
+      Buffer cluster = cluster(s);
+      if (cluster.length() == bytes.length() && cluster.equals(bytes)) {
+        return s;
+      }
+    }
+    return -1;
+  }
+}
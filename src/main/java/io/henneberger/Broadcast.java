@@ -0,0 +1,150 @@
+package io.henneberger;
+
+import io.netty.buffer.ByteBuf;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A stream id while its streamer is connected. Viewers are sharded by event loop: each loop has
+ * its own {@link LiveStream} with the viewers that loop accepted, so writes to them never leave
+ * that loop. The streamer's loop hands every chunk to the other shards with
+ * {@link Context#runOnContext}, which only queues a task on the target loop.
+ */
+class Broadcast {
+
+  final String id;
+  private final Context[] contexts;
+  private final LiveStream[] shards;
+  private final int owner;
+  private final long started = System.currentTimeMillis();
+  private final Path recordDir;
+  private final AtomicInteger viewers = new AtomicInteger();
+  private final AtomicInteger peakViewers = new AtomicInteger();
+
+  /**
+   * @param owner index of the streamer's loop in {@code contexts}
+   * @param recordDir where to record the stream, or null
+   * @param segmentDir where to segment the stream for DASH, or null
+   */
+  Broadcast(String id, Context[] contexts, int owner, Path recordDir, Path segmentDir) {
+    this.id = id;
+    this.contexts = contexts;
+    this.owner = owner;
+    shards = new LiveStream[contexts.length];
+    for (int i = 0; i < shards.length; i++) {
+      shards[i] = new LiveStream(id);
+    }
+    this.recordDir = recordDir != null ? recordDir.resolve(id) : null;
+    if (recordDir != null) {
+      shards[owner].record(this.recordDir);
+    }
+    if (segmentDir != null) {
+      shards[owner].segment(contexts[owner].owner(), segmentDir.resolve(id), started);
+    }
+  }
+
+  /**
+   * A time shift to {@code from}, in milliseconds since the epoch, in what was recorded of this
+   * broadcast, or null if it is not recorded.
+   */
+  Playback playback(Vertx vertx, long from) {
+    return recordDir != null ? new Playback(vertx, recordDir, from, started) : null;
+  }
+
+  /**
+   * Called on the streamer's loop. The streamer's own shard parses the chunk first, so invalid
+   * data is not passed on. The chunk is encoded as a WebSocket frame once for all shards, each of
+   * which holds a reference to it until its viewers have been sent it.
+   */
+  void ingest(Buffer data) throws IOException {
+    long arrived = System.nanoTime();
+    ByteBuf frame = WebSocketViewer.binaryFrame(data);
+    try {
+      shards[owner].ingest(data, frame, arrived);
+      for (int i = 0; i < shards.length; i++) {
+        if (i != owner) {
+          LiveStream shard = shards[i];
+          frame.retain();
+          contexts[i].runOnContext(v -> ingest(shard, data, frame, arrived));
+        }
+      }
+    } finally {
+      frame.release();
+    }
+  }
+
+  private static void ingest(LiveStream shard, Buffer data, ByteBuf frame, long arrived) {
+    try {
+      shard.ingest(data, frame, arrived);
+    } catch (IOException e) {
+      System.err.println("Closing shard of stream " + shard.id + ": " + e.getMessage());
+      shard.close();
+    } finally {
+      frame.release();
+    }
+  }
+
+  /**
+   * Adds a viewer accepted on loop {@code loop}, on that loop. If the broadcast ended there
+   * meanwhile, the viewer is closed.
+   *
+   * @return false if the loop registered after the broadcast started and has no shard
+   */
+  boolean addViewer(int loop, Viewer viewer, Playback playback) {
+    if (loop >= shards.length) {
+      return false;
+    }
+    shards[loop].addViewer(viewer, playback);
+    peakViewers.accumulateAndGet(viewers.incrementAndGet(), Math::max);
+    return true;
+  }
+
+  void removeViewer(int loop, Viewer viewer) {
+    shards[loop].removeViewer(viewer);
+    viewers.decrementAndGet();
+  }
+
+  /**
+   * Called on the streamer's loop when it disconnects. Each shard closes its viewers on its own
+   * loop after the chunks already queued there.
+   */
+  void close() {
+    for (int i = 0; i < shards.length; i++) {
+      if (i != owner) {
+        LiveStream shard = shards[i];
+        contexts[i].runOnContext(v -> shard.close());
+      }
+    }
+    shards[owner].close();
+  }
+
+  /**
+   * Each shard's {@link LiveStream#metrics()}, taken on its own loop, the streamer's first.
+   */
+  Future<Metrics.Shard[]> metrics() {
+    Metrics.Shard[] metrics = new Metrics.Shard[shards.length];
+    Future<Metrics.Shard[]> taken = Future.succeededFuture(metrics);
+    for (int i = 0; i < shards.length; i++) {
+      int index = i;
+      int shard = (owner + i) % shards.length;
+      Promise<Metrics.Shard> promise = Promise.promise();
+      contexts[shard].runOnContext(v -> promise.complete(shards[shard].metrics()));
+      taken = taken.compose(m -> promise.future().map(one -> {
+        m[index] = one;
+        return m;
+      }));
+    }
+    return taken;
+  }
+
+  String stats() {
+    return shards[owner].stats() + ", " + viewers.get() + " viewers (peak " + peakViewers.get()
+        + ") on " + shards.length + " event loops";
+  }
+}
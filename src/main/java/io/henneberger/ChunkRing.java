@@ -0,0 +1,120 @@
+package io.henneberger;
+
+import io.netty.buffer.ByteBuf;
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * The latest chunks of a stream, each with its encoded frame, in a ring addressed by sequence
+ * number. Sequence {@code s} is in slot {@code s & mask} while {@code tail() <= s < head()}. The
+ * oldest chunks are dropped when the slots or the byte budget run out, so the memory held is
+ * bounded however many viewers read from the ring.
+ */
+final class ChunkRing {
+
+  private final int mask;
+  private final long maxBytes;
+  private final Buffer[] chunks;
+  private final ByteBuf[] frames;
+  private final long[] positions;
+  private long head;
+  private long tail;
+  private long bytes;
+
+  /**
+   * @param slots a power of two
+   */
+  ChunkRing(int slots, long maxBytes) {
+    this.mask = slots - 1;
+    this.maxBytes = maxBytes;
+    chunks = new Buffer[slots];
+    frames = new ByteBuf[slots];
+    positions = new long[slots];
+  }
+
+  /**
+   * Sequence number the next chunk will get.
+   */
+  long head() {
+    return head;
+  }
+
+  /**
+   * Sequence number of the oldest chunk still held.
+   */
+  long tail() {
+    return tail;
+  }
+
+  /**
+   * Appends a chunk, retaining {@code frame}, and drops the oldest chunks over the budget. The
+   * latest chunk is always kept.
+   *
+   * @param position stream position of the first byte of {@code chunk}
+   * @return the chunk's sequence number
+   */
+  long publish(Buffer chunk, ByteBuf frame, long position) {
+    if (head - tail == chunks.length) {
+      evict();
+    }
+    int slot = (int) head & mask;
+    chunks[slot] = chunk;
+    frames[slot] = frame.retain();
+    positions[slot] = position;
+    bytes += chunk.length();
+    while (bytes > maxBytes && tail < head) {
+      evict();
+    }
+    return head++;
+  }
+
+  Buffer chunk(long sequence) {
+    return chunks[(int) sequence & mask];
+  }
+
+  ByteBuf frame(long sequence) {
+    return frames[(int) sequence & mask];
+  }
+
+  long position(long sequence) {
+    return positions[(int) sequence & mask];
+  }
+
+  /**
+   * Stream position just past the chunk.
+   */
+  long end(long sequence) {
+    int slot = (int) sequence & mask;
+    return positions[slot] + chunks[slot].length();
+  }
+
+  /**
+   * Sequence number of the chunk holding stream position {@code position}, or -1 if it is not
+   * held. Searches back from the newest chunk, where lookups usually land.
+   */
+  long find(long position) {
+    for (long s = head - 1; s >= tail; s--) {
+      if (position(s) <= position) {
+        return position < end(s) ? s : -1;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Releases every chunk.
+   */
+  void clear() {
+    while (tail < head) {
+      evict();
+    }
+  }
+
+  private void evict() {
+    int slot = (int) tail & mask;
+    bytes -= chunks[slot].length();
+    frames[slot].release();
+    chunks[slot] = null;
+    frames[slot] = null;
+    tail++;
+  }
+}
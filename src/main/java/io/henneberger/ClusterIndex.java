@@ -0,0 +1,106 @@
+package io.henneberger;
+
+import java.util.Arrays;
+
+/**
+ * Where each Cluster of a file starts, its timecode and the flags of its first video block, kept
+ * as parallel primitive arrays. Built by {@link WebMDecoder#index(java.nio.file.Path)}.
+ */
+public final class ClusterIndex {
+
+  private long[] offsets = new long[64];
+  private long[] timecodes = new long[64];
+  private int[] flags = new int[64];
+  private int size;
+  private long timestampScale = 1000000;
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Absolute byte offset of the Cluster element header.
+   */
+  public long offset(int i) {
+    checkIndex(i);
+    return offsets[i];
+  }
+
+  /**
+   * Cluster timecode in {@link #timestampScale()} units.
+   */
+  public long timecode(int i) {
+    checkIndex(i);
+    return timecodes[i];
+  }
+
+  /**
+   * {@link WebMHandler} flag bits of the first video block, or 0 if the Cluster has none.
+   */
+  public int flags(int i) {
+    checkIndex(i);
+    return flags[i];
+  }
+
+  public boolean isKeyframe(int i) {
+    return (flags(i) & WebMHandler.KEYFRAME) != 0;
+  }
+
+  /**
+   * Nanoseconds per timecode unit, from the Segment Info.
+   */
+  public long timestampScale() {
+    return timestampScale;
+  }
+
+  /**
+   * Index of the last keyframe Cluster starting at or before {@code timeMillis}, the first Cluster
+   * if there is none, or -1 if the index is empty.
+   */
+  public int seek(long timeMillis) {
+    int i = floor(timeMillis * 1000000 / timestampScale);
+    while (i > 0 && (flags[i] & WebMHandler.KEYFRAME) == 0) {
+      i--;
+    }
+    return size == 0 ? -1 : Math.max(i, 0);
+  }
+
+  /**
+   * Index of the last Cluster whose timecode is at most {@code timecode}, or -1.
+   */
+  public int floor(long timecode) {
+    int low = 0;
+    int high = size - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (timecodes[mid] <= timecode) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return high;
+  }
+
+  void setTimestampScale(long timestampScale) {
+    this.timestampScale = timestampScale;
+  }
+
+  void add(long offset, long timecode, int blockFlags) {
+    if (size == offsets.length) {
+      offsets = Arrays.copyOf(offsets, size * 2);
+      timecodes = Arrays.copyOf(timecodes, size * 2);
+      flags = Arrays.copyOf(flags, size * 2);
+    }
+    offsets[size] = offset;
+    timecodes[size] = timecode;
+    flags[size] = blockFlags;
+    size++;
+  }
+
+  private void checkIndex(int i) {
+    if (i < 0 || i >= size) {
+      throw new IndexOutOfBoundsException("Cluster " + i + " of " + size);
+    }
+  }
+}
@@ -0,0 +1,103 @@
+package io.henneberger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A run of consecutive Clusters decoded on a fork-join pool by
+ * {@link WebMDecoder#decodeParallel}. The run maps its own byte range, decodes it with a private
+ * {@link WebMDecoder} and records the events as primitives, with payloads kept as positions into
+ * the mapping, so they can be replayed on the caller's thread in file order.
+ */
+final class ClusterRun extends RecursiveAction implements WebMHandler {
+
+  private static final long serialVersionUID = 1L;
+  private static final int CLUSTER_START = -1;
+
+  private final FileChannel channel;
+  final long start;
+  long end;
+
+  private ByteBuffer data;
+  private int count;
+  // Cluster timecode for CLUSTER_START, track number for frames
+  private long[] values = new long[1024];
+  private int[] flags = new int[1024];
+  private int[] timecodes = new int[1024];
+  private int[] starts = new int[1024];
+  private int[] ends = new int[1024];
+
+  ClusterRun(FileChannel channel, long start, long end) {
+    this.channel = channel;
+    this.start = start;
+    this.end = end;
+  }
+
+  @Override
+  protected void compute() {
+    try {
+      data = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+      new WebMDecoder(this).decodeClusters(data);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Waits for the run to be decoded and passes its events to {@code handler}.
+   */
+  void replay(WebMHandler handler) throws IOException {
+    try {
+      join();
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    ByteBuffer payload = data.duplicate();
+    for (int i = 0; i < count; i++) {
+      if (flags[i] == CLUSTER_START) {
+        handler.onClusterStart(values[i]);
+      } else {
+        payload.clear();
+        payload.position(starts[i]).limit(ends[i]);
+        handler.onSimpleBlock(values[i], timecodes[i], flags[i], payload);
+      }
+    }
+    data = null;
+    values = null;
+    flags = null;
+    timecodes = null;
+    starts = null;
+    ends = null;
+  }
+
+  @Override
+  public void onClusterStart(long timecode) {
+    add(timecode, CLUSTER_START, 0, 0, 0);
+  }
+
+  @Override
+  public void onSimpleBlock(long trackNumber, int relativeTimecode, int blockFlags,
+      ByteBuffer payload) {
+    add(trackNumber, blockFlags, relativeTimecode, payload.position(), payload.limit());
+  }
+
+  private void add(long value, int eventFlags, int timecode, int payloadStart, int payloadEnd) {
+    if (count == values.length) {
+      values = Arrays.copyOf(values, count * 2);
+      flags = Arrays.copyOf(flags, count * 2);
+      timecodes = Arrays.copyOf(timecodes, count * 2);
+      starts = Arrays.copyOf(starts, count * 2);
+      ends = Arrays.copyOf(ends, count * 2);
+    }
+    values[count] = value;
+    flags[count] = eventFlags;
+    timecodes[count] = timecode;
+    starts[count] = payloadStart;
+    ends[count] = payloadEnd;
+    count++;
+  }
+}
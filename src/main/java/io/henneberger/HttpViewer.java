@@ -0,0 +1,90 @@
+package io.henneberger;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.net.impl.ConnectionBase;
+import java.io.File;
+
+/**
+ * A GET of {@code /live/{id}.webm}, answered with one growing WebM in a chunked response for
+ * players that cannot use Media Source Extensions. The MIME type becomes the Content-Type. A viewer
+ * that is skipped ahead just continues at the next keyframe Cluster, as there is no way to tell
+ * the player.
+ *
+ * <p>Live chunks are written as the payload of the WebSocket frames encoded for {@code /watch},
+ * sliced out of the same buffers and written straight to the connection's channel, where the HTTP
+ * encoder adds the chunk framing around them without copying.
+ */
+class HttpViewer extends Viewer {
+
+  final HttpServerResponse response;
+  private final ChannelHandlerContext channel;
+
+  HttpViewer(HttpServerResponse response, ConnectionBase connection) {
+    this.response = response;
+    this.channel = connection.channelHandlerContext();
+    response.setChunked(true);
+    response.setWriteQueueMaxSize(MAX_QUEUE_SIZE);
+  }
+
+  @Override
+  String transport() {
+    return "http";
+  }
+
+  @Override
+  long queuedBytes() {
+    return queuedBytes(channel);
+  }
+
+  @Override
+  boolean writeQueueFull() {
+    return response.writeQueueFull();
+  }
+
+  @Override
+  void drainHandler(Handler<Void> handler) {
+    response.drainHandler(handler);
+  }
+
+  @Override
+  void close() {
+    // The connection goes too, so the viewer is removed on its close handler like a socket
+    if (!response.ended()) {
+      response.end().onComplete(v -> response.close());
+    }
+  }
+
+  @Override
+  void writeType(String mimeType) {
+    if (!response.headWritten()) {
+      response.putHeader("Content-Type", mimeType);
+    }
+  }
+
+  @Override
+  void write(Buffer bytes) {
+    response.write(bytes);
+  }
+
+  @Override
+  void writeChunk(ByteBuf frame, int length) {
+    ByteBuf payload = frame.retainedSlice(frame.writerIndex() - length, length);
+    channel.write(new DefaultHttpContent(payload), channel.voidPromise());
+  }
+
+  @Override
+  void flush() {
+    channel.flush();
+  }
+
+  @Override
+  void sendFile(File file, long offset, long length) {
+    channel.writeAndFlush(new DefaultFileRegion(file, offset, length), channel.voidPromise());
+  }
+}
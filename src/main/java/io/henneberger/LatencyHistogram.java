@@ -0,0 +1,61 @@
+package io.henneberger;
+
+/**
+ * Counts of latencies in fixed buckets, as a Prometheus histogram. Recording is a few compares and
+ * two increments, with nothing allocated. Not thread safe: each shard keeps its own and they are
+ * added up when scraped.
+ */
+final class LatencyHistogram {
+
+  // Upper bounds of the buckets, followed by one for anything slower
+  private static final long[] BOUNDS_NANOS = {
+      50_000, 100_000, 250_000, 500_000, 1_000_000, 2_500_000, 5_000_000, 10_000_000, 25_000_000,
+      50_000_000, 100_000_000, 250_000_000, 1_000_000_000
+  };
+
+  private final long[] counts = new long[BOUNDS_NANOS.length + 1];
+  private long sumNanos;
+
+  void record(long nanos) {
+    int bucket = 0;
+    while (bucket < BOUNDS_NANOS.length && nanos > BOUNDS_NANOS[bucket]) {
+      bucket++;
+    }
+    counts[bucket]++;
+    sumNanos += nanos;
+  }
+
+  /**
+   * Adds the counts of {@code other} to this one.
+   */
+  void add(LatencyHistogram other) {
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] += other.counts[i];
+    }
+    sumNanos += other.sumNanos;
+  }
+
+  LatencyHistogram copy() {
+    LatencyHistogram copy = new LatencyHistogram();
+    copy.add(this);
+    return copy;
+  }
+
+  /**
+   * Appends the bucket, sum and count samples of metric {@code name}, in seconds.
+   *
+   * @param labels the other labels of each sample, without braces
+   */
+  void write(StringBuilder out, String name, String labels) {
+    long count = 0;
+    for (int i = 0; i < counts.length; i++) {
+      count += counts[i];
+      String le = i < BOUNDS_NANOS.length ? Double.toString(BOUNDS_NANOS[i] / 1e9) : "+Inf";
+      out.append(name).append("_bucket{").append(labels).append(",le=\"").append(le)
+          .append("\"} ").append(count).append('\n');
+    }
+    out.append(name).append("_sum{").append(labels).append("} ").append(sumNanos / 1e9)
+        .append('\n');
+    out.append(name).append("_count{").append(labels).append("} ").append(count).append('\n');
+  }
+}
@@ -0,0 +1,360 @@
+package io.henneberger;
+
+import io.netty.buffer.ByteBuf;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A broadcast from one streamer socket. What the streamer sends is parsed as it arrives to capture
+ * the init segment, everything before the first Cluster, and to find the Clusters that start with
+ * a keyframe. Chunks are appended once to a {@link ChunkRing} and each viewer only keeps a cursor
+ * into it, which is drained while its socket is writable. A new viewer starts at the latest
+ * keyframe Cluster still in the ring instead of waiting for the next one, and a viewer that falls
+ * too far behind jumps ahead to a keyframe Cluster. One per event loop of a {@link Broadcast},
+ * confined to that loop.
+ */
+class LiveStream implements WebMHandler {
+
+  private static final int MAX_INIT_SIZE = 1024 * 1024;
+  private static final int RING_SLOTS = 1024;
+  private static final int RING_SIZE = 16 * 1024 * 1024;
+  // Bytes a viewer may be behind the latest chunk before it is skipped to a keyframe
+  private static final int MAX_LAG = 4 * 1024 * 1024;
+
+  final String id;
+  private final Set<Viewer> viewers = new HashSet<>();
+  private final WebMStreamParser parser = new WebMStreamParser(this);
+  private final ChunkRing ring = new ChunkRing(RING_SLOTS, RING_SIZE);
+
+  // Bytes received before the first Cluster, null once the init segment is known
+  private Buffer header = Buffer.buffer();
+  private Buffer init;
+  private String mimeType;
+  private boolean video;
+  private long videoTrack;
+  private final StringBuilder codecs = new StringBuilder();
+  private long timestampScale = 1000000;
+
+  // Where to record the stream, if it is recorded
+  private Path recordDir;
+  private Recorder recorder;
+  // Where to segment the stream for DASH, if it is
+  private Vertx vertx;
+  private Path segmentDir;
+  private long segmentsSince;
+  private Segmenter segmenter;
+
+  private final long startTime = System.currentTimeMillis();
+  private long frames;
+  private long clusters;
+  private long keyframeClusters;
+  private long clusterTimecode;
+  // Timecode of the latest keyframe Cluster and how long after the one before it, or -1
+  private long keyframeTimecode = -1;
+  private long keyframeInterval = -1;
+  private final LatencyHistogram fanOut = new LatencyHistogram();
+
+  // Latest Cluster starting with a keyframe: the chunk it starts in and its stream position
+  private long keyframeSequence = -1;
+  private long keyframePosition;
+  private boolean firstBlockPending;
+  private boolean closed;
+
+  LiveStream(String id) {
+    this.id = id;
+  }
+
+  /**
+   * Records the stream with a {@link Recorder} from its first Cluster on.
+   */
+  void record(Path dir) {
+    recordDir = dir;
+  }
+
+  /**
+   * Cuts the stream into DASH segments with a {@link Segmenter} from its first keyframe on.
+   *
+   * @param since when the broadcast started, to name its segments
+   */
+  void segment(Vertx vertx, Path dir, long since) {
+    this.vertx = vertx;
+    segmentDir = dir;
+    segmentsSince = since;
+  }
+
+  /**
+   * Closes the viewer straight away if the broadcast ended before it got here.
+   *
+   * @param playback where to start the viewer in the recording, or null to start live
+   */
+  void addViewer(Viewer viewer, Playback playback) {
+    if (closed) {
+      viewer.close();
+      return;
+    }
+    viewers.add(viewer);
+    viewer.drainHandler(v -> drain(viewer));
+    if (playback != null) {
+      viewer.startPlayback(playback);
+      playback.start(() -> drainIfWatching(viewer));
+    }
+    if (init != null) {
+      viewer.sendInit(mimeType, init);
+      drain(viewer);
+    }
+  }
+
+
+  void removeViewer(Viewer viewer) {
+    viewers.remove(viewer);
+  }
+
+  /**
+   * Ends the broadcast and disconnects its viewers.
+   */
+  void close() {
+    closed = true;
+    for (Viewer viewer : new ArrayList<>(viewers)) {
+      viewer.close();
+    }
+    viewers.clear();
+    ring.clear();
+    if (recorder != null) {
+      recorder.close();
+    }
+    if (segmenter != null) {
+      segmenter.close();
+    }
+  }
+
+  /**
+   * One line summary of what the stream received.
+   */
+  String stats() {
+    return "Stream " + id + ": " + parser.position() + " bytes in " + frames + " frames, "
+        + clusters + " clusters, " + (System.currentTimeMillis() - startTime) + " ms";
+  }
+
+  /**
+   * What the stream and its viewers on this loop look like now.
+   */
+  Metrics.Shard metrics() {
+    Metrics.Shard metrics = new Metrics.Shard();
+    metrics.bytes = parser.position();
+    metrics.frames = frames;
+    metrics.clusters = clusters;
+    metrics.keyframeClusters = keyframeClusters;
+    if (keyframeInterval >= 0) {
+      metrics.keyframeIntervalSeconds = keyframeInterval * (timestampScale / 1e9);
+    }
+    metrics.fanOut = fanOut.copy();
+    long end = ring.head() > ring.tail() ? ring.end(ring.head() - 1) : 0;
+    for (Viewer viewer : viewers) {
+      long lag = viewer.position() >= 0 ? Math.max(0, end - viewer.position()) : 0;
+      metrics.viewers.add(new Metrics.ViewerSample(viewer.id, viewer.transport(),
+          viewer.queuedBytes(), lag, viewer.droppedBytes()));
+    }
+    return metrics;
+  }
+
+  /**
+   * @param frame {@code data} encoded by {@link WebSocketViewer#binaryFrame}, retained while in
+   *     the ring
+   * @param arrived {@link System#nanoTime()} when the streamer's frame arrived, to measure how
+   *     long it takes to reach the viewers
+   */
+  void ingest(Buffer data, ByteBuf frame, long arrived) throws IOException {
+    frames++;
+    if (header != null) {
+      if (header.length() + data.length() > MAX_INIT_SIZE) {
+        throw new IOException("No Cluster in the first " + MAX_INIT_SIZE + " bytes");
+      }
+      header.appendBuffer(data);
+    }
+    if (recorder != null) {
+      recorder.append(data);
+    }
+    if (segmenter != null) {
+      segmenter.append(data);
+    }
+    // Published first so a keyframe Cluster starting in this chunk can be found in the ring
+    ring.publish(data, frame, parser.position());
+    parser.feed(data);
+    for (Viewer viewer : viewers) {
+      drain(viewer);
+    }
+    if (!viewers.isEmpty()) {
+      fanOut.record(System.nanoTime() - arrived);
+    }
+  }
+
+  /**
+   * Sends a viewer what it has not had from the ring, for as long as its socket is writable.
+   */
+  private void drain(Viewer viewer) {
+    if (!viewer.initSent() || ring.tail() == ring.head()) {
+      return;
+    }
+    if (viewer.playback() != null && !play(viewer, viewer.playback())) {
+      return;
+    }
+    long end = ring.end(ring.head() - 1);
+    if (viewer.synced()
+        && (viewer.cursor() < ring.tail() || end - viewer.position() > MAX_LAG)) {
+      viewer.drop();
+    }
+    if (!viewer.synced()) {
+      if (keyframeSequence < ring.tail() || keyframePosition < viewer.position()
+          || viewer.writeQueueFull()) {
+        return;
+      }
+      Buffer chunk = ring.chunk(keyframeSequence);
+      int offset = (int) (keyframePosition - ring.position(keyframeSequence));
+      viewer.resume(mimeType, chunk.slice(offset, chunk.length()), keyframePosition,
+          keyframeSequence + 1, ring.end(keyframeSequence));
+    }
+    viewer.send(ring);
+  }
+
+  /**
+   * Drains a viewer after reading from its recording, unless it left meanwhile.
+   */
+  private void drainIfWatching(Viewer viewer) {
+    if (viewers.contains(viewer)) {
+      drain(viewer);
+    }
+  }
+
+  /**
+   * Sends a time-shifted viewer recorded Clusters while its socket is writable, until the next one
+   * is in the ring and recent enough, or there are no more.
+   *
+   * @return true once the viewer has left the recording for the ring
+   */
+  private boolean play(Viewer viewer, Playback playback) {
+    while (!playback.loading() && !viewer.writeQueueFull()) {
+      long position = playback.position();
+      // Switched to the ring only close enough to the latest chunk not to be dropped for lag
+      long sequence = position >= 0 && ring.end(ring.head() - 1) - position <= MAX_LAG
+          ? ring.find(position) : -1;
+      if (sequence >= 0) {
+        viewer.endPlayback(position);
+        Buffer chunk = ring.chunk(sequence);
+        int offset = (int) (position - ring.position(sequence));
+        viewer.resume(mimeType, chunk.slice(offset, chunk.length()), position, sequence + 1,
+            ring.end(sequence));
+        return true;
+      }
+      if (playback.failed()) {
+        viewer.endPlayback(playback.endPosition());
+        return true;
+      }
+      if (!playback.sendNext(viewer, () -> drainIfWatching(viewer))) {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public void onSegmentInfo(SegmentInfo info) {
+    timestampScale = info.timestampScale;
+  }
+
+  @Override
+  public void onTrackEntry(TrackEntry track) {
+    video |= track.isVideo();
+    if (videoTrack == 0 && track.isVideo()) {
+      videoTrack = track.trackNumber;
+    }
+    if (codecs.length() > 0) {
+      codecs.append(',');
+    }
+    codecs.append(codecName(track.codecId));
+  }
+
+  @Override
+  public void onClusterStart(long timecode) {
+    clusters++;
+    clusterTimecode = timecode;
+    if (init == null) {
+      init = header.getBuffer(0, (int) parser.clusterPosition());
+      mimeType = (video ? "video/webm" : "audio/webm") + "; codecs=\"" + codecs + "\"";
+      if (recordDir != null) {
+        recorder = new Recorder(recordDir, init);
+        recorder.append(header.slice(init.length(), header.length()));
+      }
+      if (segmentDir != null) {
+        segmenter = new Segmenter(vertx, segmentDir, segmentsSince, init, mimeType,
+            timestampScale);
+        segmenter.append(header.slice(init.length(), header.length()));
+      }
+      header = null;
+      for (Viewer viewer : viewers) {
+        viewer.sendInit(mimeType, init);
+      }
+    }
+    if (recorder != null) {
+      recorder.clusterStart(parser.clusterPosition(), timecode);
+    }
+    if (segmenter != null) {
+      segmenter.clusterStart(parser.clusterPosition(), timecode);
+    }
+    firstBlockPending = true;
+  }
+
+  @Override
+  public void onSimpleBlock(long trackNumber, int relativeTimecode, int flags,
+      ByteBuffer payload) {
+    if (segmenter != null) {
+      segmenter.block(relativeTimecode);
+    }
+    if (firstBlockPending && (videoTrack == 0 || trackNumber == videoTrack)) {
+      firstBlockPending = false;
+      long sequence = ring.find(parser.clusterPosition());
+      if ((flags & KEYFRAME) != 0) {
+        keyframeClusters++;
+        if (keyframeTimecode >= 0) {
+          keyframeInterval = clusterTimecode - keyframeTimecode;
+        }
+        keyframeTimecode = clusterTimecode;
+      }
+      if ((flags & KEYFRAME) != 0 && sequence >= 0) {
+        keyframeSequence = sequence;
+        keyframePosition = parser.clusterPosition();
+      }
+      if (recorder != null) {
+        recorder.clusterResolved(flags);
+      }
+      if (segmenter != null) {
+        segmenter.clusterResolved(flags);
+      }
+    }
+  }
+
+  private static String codecName(String codecId) {
+    if (codecId == null) {
+      return "";
+    }
+    switch (codecId) {
+      case "V_VP8":
+        return "vp8";
+      case "V_VP9":
+        return "vp9";
+      case "V_AV1":
+        return "av01.0.08M.08";
+      case "A_OPUS":
+        return "opus";
+      case "A_VORBIS":
+        return "vorbis";
+      default:
+        return codecId.substring(codecId.indexOf('_') + 1).toLowerCase();
+    }
+  }
+}
@@ -0,0 +1,158 @@
+package io.henneberger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * The {@code /metrics} page in the Prometheus text format. Each {@link LiveStream} counts what it
+ * does on its own loop without allocating; a scrape copies those counts into a {@link Shard} on
+ * each loop and this puts them together. Rates, such as ingest bytes per second, come from
+ * {@code rate()} over the counters.
+ */
+final class Metrics {
+
+  static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  private Metrics() {
+  }
+
+  /**
+   * What one shard of a broadcast measured, copied on its loop.
+   */
+  static final class Shard {
+
+    // Ingest, only counted by the streamer's shard
+    long bytes;
+    long frames;
+    long clusters;
+    long keyframeClusters;
+    // Time between the last two keyframe Clusters, NaN until there were two
+    double keyframeIntervalSeconds = Double.NaN;
+
+    LatencyHistogram fanOut;
+    final List<ViewerSample> viewers = new ArrayList<>();
+  }
+
+  static final class ViewerSample {
+
+    final long id;
+    final String transport;
+    final long queuedBytes;
+    final long lagBytes;
+    final long droppedBytes;
+
+    ViewerSample(long id, String transport, long queuedBytes, long lagBytes, long droppedBytes) {
+      this.id = id;
+      this.transport = transport;
+      this.queuedBytes = queuedBytes;
+      this.lagBytes = lagBytes;
+      this.droppedBytes = droppedBytes;
+    }
+  }
+
+  /**
+   * Formats the shards of each stream, {@code shards.get(i)} being those of {@code streams.get(i)}
+   * with the streamer's shard first.
+   */
+  static String format(List<String> streams, List<Shard[]> shards) {
+    List<String> ids = new ArrayList<>(streams.size());
+    for (String id : streams) {
+      ids.add(escape(id));
+    }
+    StringBuilder out = new StringBuilder(4096);
+    out.append("# HELP streaming_streams Live broadcasts.\n")
+        .append("# TYPE streaming_streams gauge\n")
+        .append("streaming_streams ").append(ids.size()).append('\n');
+
+    family(out, "streaming_ingest_bytes_total", "counter", "Bytes received from the streamer.");
+    for (int i = 0; i < ids.size(); i++) {
+      sample(out, "streaming_ingest_bytes_total", ids.get(i), shards.get(i)[0].bytes);
+    }
+    family(out, "streaming_ingest_frames_total", "counter",
+        "WebSocket frames received from the streamer.");
+    for (int i = 0; i < ids.size(); i++) {
+      sample(out, "streaming_ingest_frames_total", ids.get(i), shards.get(i)[0].frames);
+    }
+    family(out, "streaming_ingest_clusters_total", "counter", "Clusters received.");
+    for (int i = 0; i < ids.size(); i++) {
+      sample(out, "streaming_ingest_clusters_total", ids.get(i), shards.get(i)[0].clusters);
+    }
+    family(out, "streaming_ingest_keyframe_clusters_total", "counter",
+        "Clusters received that start with a keyframe.");
+    for (int i = 0; i < ids.size(); i++) {
+      sample(out, "streaming_ingest_keyframe_clusters_total", ids.get(i),
+          shards.get(i)[0].keyframeClusters);
+    }
+    family(out, "streaming_keyframe_interval_seconds", "gauge",
+        "Stream time between the last two keyframe Clusters.");
+    for (int i = 0; i < ids.size(); i++) {
+      double interval = shards.get(i)[0].keyframeIntervalSeconds;
+      if (!Double.isNaN(interval)) {
+        out.append("streaming_keyframe_interval_seconds{stream=\"").append(ids.get(i))
+            .append("\"} ").append(interval).append('\n');
+      }
+    }
+
+    family(out, "streaming_viewers", "gauge", "Viewers watching.");
+    for (int i = 0; i < ids.size(); i++) {
+      int viewers = 0;
+      for (Shard shard : shards.get(i)) {
+        viewers += shard.viewers.size();
+      }
+      sample(out, "streaming_viewers", ids.get(i), viewers);
+    }
+    family(out, "streaming_fanout_latency_seconds", "histogram",
+        "Time from a chunk arriving to it being written to every viewer of a shard that was ready"
+            + " for it.");
+    for (int i = 0; i < ids.size(); i++) {
+      LatencyHistogram total = new LatencyHistogram();
+      for (Shard shard : shards.get(i)) {
+        total.add(shard.fanOut);
+      }
+      total.write(out, "streaming_fanout_latency_seconds", "stream=\"" + ids.get(i) + "\"");
+    }
+
+    family(out, "streaming_viewer_queued_bytes", "gauge",
+        "Bytes written to the viewer's connection and not yet sent.");
+    viewerSamples(out, ids, shards, "streaming_viewer_queued_bytes", v -> v.queuedBytes);
+    family(out, "streaming_viewer_lag_bytes", "gauge",
+        "Bytes between what the viewer was sent and the latest chunk.");
+    viewerSamples(out, ids, shards, "streaming_viewer_lag_bytes", v -> v.lagBytes);
+    family(out, "streaming_viewer_dropped_bytes_total", "counter",
+        "Live bytes the viewer skipped for falling behind.");
+    viewerSamples(out, ids, shards, "streaming_viewer_dropped_bytes_total",
+        v -> v.droppedBytes);
+    return out.toString();
+  }
+
+  /**
+   * Escapes a label value.
+   */
+  private static String escape(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+
+  private static void family(StringBuilder out, String name, String type, String help) {
+    out.append("# HELP ").append(name).append(' ').append(help).append('\n')
+        .append("# TYPE ").append(name).append(' ').append(type).append('\n');
+  }
+
+  private static void sample(StringBuilder out, String name, String stream, long value) {
+    out.append(name).append("{stream=\"").append(stream).append("\"} ").append(value)
+        .append('\n');
+  }
+
+  private static void viewerSamples(StringBuilder out, List<String> ids, List<Shard[]> shards,
+      String name, ToLongFunction<ViewerSample> field) {
+    for (int i = 0; i < ids.size(); i++) {
+      for (Shard shard : shards.get(i)) {
+        for (ViewerSample viewer : shard.viewers) {
+          out.append(name).append("{stream=\"").append(ids.get(i)).append("\",viewer=\"")
+              .append(viewer.id).append("\",transport=\"").append(viewer.transport)
+              .append("\"} ").append(field.applyAsLong(viewer)).append('\n');
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,238 @@
+package io.henneberger;
+
+import io.vertx.core.Vertx;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Where a time-shifted viewer is in the recording of its stream. The viewer is sent the Clusters
+ * recorded by {@link Recorder} from the last keyframe before the time it asked for, straight from
+ * the segment files, until the stream position it has reached is back in the live ring.
+ *
+ * <p>The directory and index files are read on a worker thread; the rest is confined to the
+ * viewer's event loop.
+ */
+class Playback {
+
+  // Clusters are sent in runs of about this many bytes
+  private static final int RUN_SIZE = 1024 * 1024;
+  // How often and for how long to look for more of the recording before giving up on it
+  private static final long RETRY_MILLIS = 100;
+  private static final long MAX_WAIT_MILLIS = 5000;
+
+  private final Vertx vertx;
+  private final Path dir;
+  private final long from;
+  private final long since;
+
+  // Start times of the segments recorded since the broadcast started
+  private long[] segments = new long[0];
+  private int segment = -1;
+  // Index records of the current segment
+  private ByteBuffer records;
+  private int record;
+  // Size of the current segment once it is known to be complete, or -1
+  private long segmentSize = -1;
+  private boolean loading;
+  private boolean failed;
+  private boolean sent;
+  // When the recording was last found to have nothing more, or -1
+  private long waitingSince = -1;
+
+  /**
+   * @param from time to start from, in milliseconds since the epoch
+   * @param since when the broadcast started, to leave out earlier recordings of the same id
+   */
+  Playback(Vertx vertx, Path dir, long from, long since) {
+    this.vertx = vertx;
+    this.dir = dir;
+    this.from = from;
+    this.since = since;
+  }
+
+  boolean loading() {
+    return loading;
+  }
+
+  /**
+   * Whether there is nothing more to send from the recording.
+   */
+  boolean failed() {
+    return failed;
+  }
+
+  /**
+   * Stream position of the next Cluster to send, or -1 if not known yet.
+   */
+  long position() {
+    return records != null && record < count() ? records.getLong(offset(record) + 8) : -1;
+  }
+
+  /**
+   * Where a viewer ending its time shift now continues from: {@link #position()} if known, 0 if
+   * it was sent Clusters of unknown extent, -1 if it was sent none.
+   */
+  long endPosition() {
+    long position = position();
+    return position >= 0 ? position : sent ? 0 : -1;
+  }
+
+  /**
+   * Finds the segment and the keyframe Cluster to start from, then runs {@code loaded} on the
+   * caller's context.
+   */
+  void start(Runnable loaded) {
+    load(loaded, true);
+  }
+
+  /**
+   * Sends the viewer the next run of recorded Clusters.
+   *
+   * @param loaded run on the caller's context when more of the recording has been read, if it
+   *     had to be
+   * @return false if nothing was sent, because more has to be read first or there is no more
+   */
+  boolean sendNext(Viewer viewer, Runnable loaded) {
+    int count = count();
+    if (record + 1 < count) {
+      int end = record + 1;
+      long start = clusterOffset(record);
+      while (end + 1 < count && clusterOffset(end + 1) - start <= RUN_SIZE) {
+        end++;
+      }
+      viewer.sendFile(file(), start, clusterOffset(end) - start);
+      record = end;
+      sent = true;
+      return true;
+    }
+    if (record < count && segmentSize >= 0) {
+      // The last Cluster of a finished segment ends with the file
+      long start = clusterOffset(record);
+      viewer.sendFile(file(), start, segmentSize - start);
+      record = count;
+      sent = true;
+      return true;
+    }
+    if (record >= count && segment + 1 < segments.length) {
+      segment++;
+      records = null;
+      record = 0;
+      segmentSize = -1;
+    }
+    load(loaded, false);
+    return false;
+  }
+
+  private void load(Runnable loaded, boolean seek) {
+    loading = true;
+    int previousCount = count();
+    int previousSegments = segments.length;
+    vertx.<Object>executeBlocking(promise -> {
+      try {
+        read(seek);
+        promise.complete();
+      } catch (IOException e) {
+        promise.fail(e);
+      }
+    }, false, result -> {
+      loading = false;
+      if (result.failed()) {
+        System.err.println("Playback from " + dir + " failed: " + result.cause());
+        failed = true;
+      } else if (!seek && count() == previousCount && segments.length == previousSegments
+          && segmentSize < 0) {
+        // Nothing more on disk yet, the Cluster being written should be soon
+        long now = System.currentTimeMillis();
+        if (waitingSince < 0) {
+          waitingSince = now;
+        }
+        if (now - waitingSince < MAX_WAIT_MILLIS) {
+          loading = true;
+          vertx.setTimer(RETRY_MILLIS, id -> load(loaded, false));
+          return;
+        }
+        failed = true;
+      } else {
+        waitingSince = -1;
+      }
+      loaded.run();
+    });
+  }
+
+  /**
+   * Reads the segment list and the index of the current segment, choosing both first if
+   * {@code seek}. Runs on a worker thread.
+   */
+  private void read(boolean seek) throws IOException {
+    long[] found = new long[16];
+    int n = 0;
+    if (Files.isDirectory(dir)) {
+      String glob = "*" + Recorder.INDEX_SUFFIX;
+      try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, glob)) {
+        for (Path file : files) {
+          String name = file.getFileName().toString();
+          long started = Long.parseLong(name.substring(0, name.length() - 4));
+          if (started >= since) {
+            if (n == found.length) {
+              found = Arrays.copyOf(found, n * 2);
+            }
+            found[n++] = started;
+          }
+        }
+      }
+    }
+    segments = Arrays.copyOf(found, n);
+    Arrays.sort(segments);
+    if (seek) {
+      segment = 0;
+      while (segment + 1 < segments.length && segments[segment + 1] <= from) {
+        segment++;
+      }
+    }
+    if (segment < 0 || segment >= segments.length) {
+      failed = true;
+      return;
+    }
+    byte[] index = Files.readAllBytes(dir.resolve(segments[segment] + Recorder.INDEX_SUFFIX));
+    records = ByteBuffer.wrap(index, 0, index.length - index.length % Recorder.INDEX_RECORD_SIZE);
+    // The first record of the next segment is written after the last bytes of this one
+    if (segment + 1 < segments.length && Files.size(dir.resolve(segments[segment + 1]
+        + Recorder.INDEX_SUFFIX)) >= Recorder.INDEX_RECORD_SIZE) {
+      segmentSize = Files.size(file().toPath());
+    }
+    if (seek) {
+      record = 0;
+      for (int i = 0; i < count(); i++) {
+        if (records.getLong(offset(i) + 24) <= from
+            && (records.getInt(offset(i) + 32) & WebMHandler.KEYFRAME) != 0) {
+          record = i;
+        }
+      }
+    }
+  }
+
+  private int count() {
+    return records != null ? records.limit() / Recorder.INDEX_RECORD_SIZE : 0;
+  }
+
+  /**
+   * Where a record starts. Its fields are the Cluster's offset in the segment, stream position,
+   * timecode and time received, then its flags.
+   */
+  private static int offset(int record) {
+    return record * Recorder.INDEX_RECORD_SIZE;
+  }
+
+  private long clusterOffset(int record) {
+    return records.getLong(offset(record));
+  }
+
+  private File file() {
+    return dir.resolve(segments[segment] + Recorder.SEGMENT_SUFFIX).toFile();
+  }
+}
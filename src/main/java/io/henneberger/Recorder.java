@@ -0,0 +1,261 @@
+package io.henneberger;
+
+import io.vertx.core.buffer.Buffer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+
+/**
+ * Records a stream to rolling segment files in {@code <dir>/<stream id>/}. Each segment is named
+ * after the time it started, in milliseconds since the epoch. {@code <start>.webm} is the init
+ * segment followed by whole Clusters, playable on its own. {@code <start>.idx} has one
+ * {@link #INDEX_RECORD_SIZE} byte record per Cluster: its offset in the segment, its position in
+ * the stream, its timecode and the time it was received as longs, then its {@link WebMHandler}
+ * block flags as an int. {@link Playback} reads them back.
+ *
+ * <p>Bytes are held until the Cluster they belong to is known to start with a keyframe or not, so
+ * a segment only ever starts at a keyframe Cluster, and are written a Cluster at a time through an
+ * {@link AsynchronousFileChannel}, off the event loop. The index record of a Cluster is written
+ * after the bytes before it, so a Cluster whose record is followed by another is whole on disk.
+ * Driven by the streamer's {@link LiveStream} on its loop.
+ */
+class Recorder {
+
+  static final int INDEX_RECORD_SIZE = 36;
+  static final String SEGMENT_SUFFIX = ".webm";
+  static final String INDEX_SUFFIX = ".idx";
+
+  private static final long SEGMENT_MILLIS = 10000;
+  // Flushed early when a Cluster gets this big
+  private static final int MAX_PENDING = 4 * 1024 * 1024;
+
+  private final Path dir;
+  private final Buffer init;
+  private final WriteQueue writes = new WriteQueue();
+  private Segment segment;
+  private boolean failed;
+
+  // Bytes not written yet, from stream position pendingStart
+  private Buffer pending = Buffer.buffer();
+  private long pendingStart;
+  // Start of a Cluster not known to start with a keyframe or not, or -1
+  private long clusterPosition = -1;
+  private long clusterTimecode;
+
+  /**
+   * @param init the init segment, the first {@code init.length()} bytes of the stream
+   */
+  Recorder(Path dir, Buffer init) {
+    this.dir = dir;
+    this.init = init;
+    this.pendingStart = init.length();
+  }
+
+  /**
+   * Adds the bytes that follow what was appended so far.
+   */
+  void append(Buffer chunk) {
+    pending.appendBuffer(chunk);
+    if (pending.length() > MAX_PENDING && clusterPosition < 0) {
+      flush(pendingStart + pending.length());
+    }
+  }
+
+  /**
+   * A Cluster starts at stream position {@code position}, already appended. The one before it is
+   * taken to have no video block if it was not resolved.
+   */
+  void clusterStart(long position, long timecode) {
+    clusterResolved(0);
+    clusterPosition = position;
+    clusterTimecode = timecode;
+  }
+
+  /**
+   * The Cluster last started has a first block with {@code flags}, or none if 0. The bytes before
+   * it are written and it goes in the index, starting a new segment if it is time to.
+   */
+  void clusterResolved(int flags) {
+    if (clusterPosition < 0) {
+      return;
+    }
+    flush(clusterPosition);
+    clusterPosition = -1;
+    long now = System.currentTimeMillis();
+    boolean keyframe = (flags & WebMHandler.KEYFRAME) != 0;
+    if (segment == null ? keyframe : keyframe && now - segment.started >= SEGMENT_MILLIS) {
+      roll(now);
+    }
+    if (segment != null) {
+      ByteBuffer record = ByteBuffer.allocate(INDEX_RECORD_SIZE);
+      record.putLong(segment.size).putLong(pendingStart).putLong(clusterTimecode).putLong(now)
+          .putInt(flags).flip();
+      segment.index.appendBytes(record.array());
+    }
+  }
+
+  /**
+   * Writes what is left and closes the segment once its writes complete.
+   */
+  void close() {
+    clusterPosition = -1;
+    flush(pendingStart + pending.length());
+    if (segment != null) {
+      segment.close();
+      segment = null;
+    }
+  }
+
+  /**
+   * Writes the pending bytes before stream position {@code position} to the segment, with the
+   * index records gathered since the last flush. Bytes before the first segment are dropped.
+   */
+  private void flush(long position) {
+    int length = (int) (position - pendingStart);
+    if (length <= 0) {
+      return;
+    }
+    if (segment != null) {
+      segment.write(ByteBuffer.wrap(pending.getBytes(0, length)));
+    }
+    pending = pending.getBuffer(length, pending.length());
+    pendingStart = position;
+  }
+
+  private void roll(long now) {
+    if (segment != null) {
+      segment.close();
+      segment = null;
+    }
+    if (failed) {
+      return;
+    }
+    try {
+      Files.createDirectories(dir);
+      segment = new Segment(dir, now, writes);
+      segment.write(ByteBuffer.wrap(init.getBytes()));
+    } catch (IOException e) {
+      failed = true;
+      System.err.println("Recording to " + dir + " stopped: " + e);
+    }
+  }
+
+  /**
+   * A segment file and its index.
+   */
+  private static final class Segment {
+
+    final long started;
+    final AsynchronousFileChannel data;
+    final AsynchronousFileChannel indexFile;
+    final WriteQueue writes;
+    // Index records not yet written
+    Buffer index = Buffer.buffer();
+    long size;
+    long indexSize;
+
+    Segment(Path dir, long started, WriteQueue writes) throws IOException {
+      this.started = started;
+      this.writes = writes;
+      data = AsynchronousFileChannel.open(dir.resolve(started + SEGMENT_SUFFIX),
+          StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+      try {
+        indexFile = AsynchronousFileChannel.open(dir.resolve(started + INDEX_SUFFIX),
+            StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+      } catch (IOException e) {
+        data.close();
+        throw e;
+      }
+    }
+
+    /**
+     * Writes {@code bytes} to the segment, then the index records gathered so far.
+     */
+    void write(ByteBuffer bytes) {
+      long position = size;
+      size += bytes.remaining();
+      writes.add(data, bytes, position);
+      writeIndex();
+    }
+
+    private void writeIndex() {
+      if (index.length() > 0) {
+        long position = indexSize;
+        indexSize += index.length();
+        writes.add(indexFile, ByteBuffer.wrap(index.getBytes()), position);
+        index = Buffer.buffer();
+      }
+    }
+
+    void close() {
+      writeIndex();
+      writes.add(data, null, 0);
+      writes.add(indexFile, null, 0);
+    }
+  }
+
+  /**
+   * Writes done one at a time in the order they were added, so whatever an index record refers
+   * to, in its own segment or an earlier one, is on disk once the record is. A write with no
+   * bytes closes its channel.
+   */
+  private static final class WriteQueue
+      implements CompletionHandler<Integer, AsynchronousFileChannel> {
+
+    private final ArrayDeque<AsynchronousFileChannel> channels = new ArrayDeque<>();
+    private final ArrayDeque<ByteBuffer> buffers = new ArrayDeque<>();
+    private final ArrayDeque<Long> positions = new ArrayDeque<>();
+    private boolean writing;
+    private ByteBuffer buffer;
+    private long position;
+
+    synchronized void add(AsynchronousFileChannel channel, ByteBuffer bytes, long position) {
+      channels.add(channel);
+      buffers.add(bytes != null ? bytes : ByteBuffer.allocate(0));
+      positions.add(bytes != null ? position : -1);
+      if (!writing) {
+        next();
+      }
+    }
+
+    private void next() {
+      while (!channels.isEmpty()) {
+        AsynchronousFileChannel channel = channels.poll();
+        buffer = buffers.poll();
+        position = positions.poll();
+        if (position >= 0) {
+          writing = true;
+          channel.write(buffer, position, channel, this);
+          return;
+        }
+        try {
+          channel.close();
+        } catch (IOException e) {
+          System.err.println("Failed to close recording: " + e);
+        }
+      }
+      writing = false;
+    }
+
+    @Override
+    public synchronized void completed(Integer written, AsynchronousFileChannel channel) {
+      if (buffer.hasRemaining()) {
+        position += written;
+        channel.write(buffer, position, channel, this);
+      } else {
+        next();
+      }
+    }
+
+    @Override
+    public synchronized void failed(Throwable e, AsynchronousFileChannel channel) {
+      System.err.println("Failed to write recording: " + e);
+      next();
+    }
+  }
+}
@@ -0,0 +1,270 @@
+package io.henneberger;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.file.CopyOptions;
+import io.vertx.core.file.FileSystem;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * Cuts a stream into segments of about {@link #SEGMENT_SECONDS} seconds for DASH, each starting
+ * with a keyframe Cluster, so viewers can fetch cacheable files over plain HTTP instead of holding
+ * a socket to the server. In {@code <dir>/<stream id>/}, {@code <start>/init.webm} is the init
+ * segment, everything before the first Cluster, and {@code <start>/<n>.webm} are whole Clusters
+ * to be appended to it, where {@code <start>} is when the broadcast started so no URL is ever
+ * reused. {@code manifest.mpd} is a dynamic MPD listing the last {@link #WINDOW} segments, updated
+ * each time one is written and made static when the broadcast ends.
+ *
+ * <p>Files are written with the Vert.x file system, one after the other, and a segment is only
+ * listed once it is on disk. Driven by the streamer's {@link LiveStream} on its loop.
+ */
+class Segmenter {
+
+  static final String MANIFEST = "manifest.mpd";
+
+  private static final int SEGMENT_SECONDS = 4;
+  // Segments listed in the manifest, and how many more are kept for viewers still fetching them
+  private static final int WINDOW = 8;
+  private static final int KEEP = 4;
+  // Segmenting stops until the next keyframe if none comes within this many bytes
+  private static final int MAX_SEGMENT_SIZE = 32 * 1024 * 1024;
+
+  private final FileSystem files;
+  private final Path dir;
+  private final Path segmentDir;
+  private final String started;
+  private final String mimeType;
+  private final String codecs;
+  // Timecode ticks per second
+  private final long timescale;
+  private Future<Void> writes;
+  private boolean failed;
+
+  // Bytes of the segment being cut, from stream position bytesStart
+  private Buffer bytes = Buffer.buffer();
+  private long bytesStart;
+  private boolean cutting;
+  private long segmentTimecode;
+  private long lastTimecode;
+  // Start of a Cluster not known to start with a keyframe or not, or -1
+  private long clusterPosition = -1;
+  private long clusterTimecode;
+
+  // Segments written, the oldest first: start timecodes and durations
+  private final ArrayDeque<long[]> segments = new ArrayDeque<>();
+  private long number;
+  private long firstTimecode = -1;
+  private long availabilityStart;
+  private long bandwidth;
+
+  /**
+   * @param dir where this stream's manifest goes, older broadcasts' segments in it are deleted
+   * @param started when the broadcast started, in milliseconds since the epoch
+   * @param init the init segment, the first {@code init.length()} bytes of the stream
+   * @param timestampScale nanoseconds per timecode tick
+   */
+  Segmenter(Vertx vertx, Path dir, long started, Buffer init, String mimeType,
+      long timestampScale) {
+    this.files = vertx.fileSystem();
+    this.dir = dir;
+    this.started = Long.toString(started);
+    this.segmentDir = dir.toAbsolutePath().resolve(this.started);
+    int codecsStart = mimeType.indexOf("codecs=\"");
+    this.mimeType = codecsStart < 0 ? mimeType : mimeType.substring(0, mimeType.indexOf(';'));
+    this.codecs = codecsStart < 0 ? null
+        : mimeType.substring(codecsStart + 8, mimeType.lastIndexOf('"'));
+    this.timescale = Math.max(1, 1000000000L / timestampScale);
+    this.bytesStart = init.length();
+    writes = Future.succeededFuture();
+    queue(() -> files.mkdirs(segmentDir.toString())
+        .compose(v -> files.readDir(dir.toString(), "\\d+"))
+        .compose(paths -> {
+          Future<Void> deleted = Future.succeededFuture();
+          for (String path : paths) {
+            // By name: readDir returns real paths, which differ if dir is behind a symbolic link
+            if (!Paths.get(path).getFileName().toString().equals(this.started)) {
+              deleted = deleted.compose(v -> files.deleteRecursive(path, true));
+            }
+          }
+          return deleted;
+        })
+        .compose(v -> files.writeFile(segmentDir.resolve("init.webm").toString(), init)));
+  }
+
+  /**
+   * Adds the bytes that follow what was appended so far.
+   */
+  void append(Buffer chunk) {
+    bytes.appendBuffer(chunk);
+    if (bytes.length() > MAX_SEGMENT_SIZE) {
+      cutting = false;
+      drop(bytesStart + bytes.length());
+    }
+  }
+
+  /**
+   * A Cluster starts at stream position {@code position}, already appended.
+   */
+  void clusterStart(long position, long timecode) {
+    clusterPosition = position;
+    clusterTimecode = timecode;
+    lastTimecode = Math.max(lastTimecode, timecode);
+    if (!cutting) {
+      drop(position);
+    }
+  }
+
+  /**
+   * A block at {@code relativeTimecode} in the Cluster last started.
+   */
+  void block(int relativeTimecode) {
+    lastTimecode = Math.max(lastTimecode, clusterTimecode + relativeTimecode);
+  }
+
+  /**
+   * The Cluster last started has a first block with {@code flags}. A new segment starts there if
+   * it is a keyframe and the current one is long enough.
+   */
+  void clusterResolved(int flags) {
+    if (clusterPosition < 0 || (flags & WebMHandler.KEYFRAME) == 0) {
+      clusterPosition = -1;
+      return;
+    }
+    if (!cutting) {
+      cutting = true;
+      segmentTimecode = clusterTimecode;
+    } else if (clusterTimecode - segmentTimecode >= SEGMENT_SECONDS * timescale) {
+      cut(clusterPosition, clusterTimecode);
+    }
+    clusterPosition = -1;
+  }
+
+  /**
+   * Writes the last segment and makes the manifest static.
+   */
+  void close() {
+    if (cutting && bytes.length() > 0) {
+      cut(bytesStart + bytes.length(), Math.max(lastTimecode, segmentTimecode + 1));
+    }
+    cutting = false;
+    bytes = Buffer.buffer();
+    writeManifest(true);
+  }
+
+  private void drop(long position) {
+    bytes = bytes.getBuffer((int) (position - bytesStart), bytes.length());
+    bytesStart = position;
+  }
+
+  private void cut(long position, long timecode) {
+    int length = (int) (position - bytesStart);
+    Buffer segment = bytes.getBuffer(0, length);
+    drop(position);
+    long duration = timecode - segmentTimecode;
+    if (firstTimecode < 0) {
+      firstTimecode = segmentTimecode;
+      availabilityStart = System.currentTimeMillis() - duration * 1000 / timescale;
+    }
+    bandwidth = Math.max(bandwidth, length * 8L * timescale / Math.max(1, duration));
+    long n = number++;
+    segments.add(new long[] {segmentTimecode, duration});
+    segmentTimecode = timecode;
+    String file = segmentDir.resolve(n + ".webm").toString();
+    queue(() -> files.writeFile(file, segment));
+    if (segments.size() > WINDOW) {
+      segments.poll();
+    }
+    writeManifest(false);
+    if (n - WINDOW - KEEP >= 0) {
+      String expired = segmentDir.resolve(n - WINDOW - KEEP + ".webm").toString();
+      queue(() -> files.delete(expired).otherwiseEmpty());
+    }
+  }
+
+  /**
+   * Replaces the manifest once the writes queued before it are done, so it only lists segments
+   * already on disk.
+   */
+  private void writeManifest(boolean ended) {
+    if (segments.isEmpty()) {
+      return;
+    }
+    Buffer manifest = Buffer.buffer(manifest(ended));
+    String file = dir.resolve(MANIFEST).toString();
+    String temp = file + ".tmp";
+    CopyOptions replace = new CopyOptions().setReplaceExisting(true).setAtomicMove(true);
+    queue(() -> files.writeFile(temp, manifest).compose(v -> files.move(temp, file, replace)));
+  }
+
+  /**
+   * Runs {@code write} after the writes queued before it. Once one fails, the rest are skipped.
+   */
+  private void queue(Supplier<Future<Void>> write) {
+    writes = writes.compose(v -> write.get());
+    writes.onFailure(e -> {
+      if (!failed) {
+        failed = true;
+        System.err.println("Segmenting to " + dir + " stopped: " + e);
+      }
+    });
+  }
+
+  /**
+   * The MPD listing {@link #segments}. Once the broadcast has {@code ended} it is a static one
+   * made of just those.
+   */
+  private String manifest(boolean ended) {
+    long[] last = segments.peekLast();
+    long offset = ended ? segments.peekFirst()[0] : firstTimecode;
+    StringBuilder mpd = new StringBuilder(1024);
+    mpd.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+        .append("<MPD xmlns=\"urn:mpeg:dash:schema:mpd:2011\"")
+        .append(" profiles=\"urn:mpeg:dash:profile:isoff-live:2011\"");
+    if (ended) {
+      mpd.append(" type=\"static\" mediaPresentationDuration=\"")
+          .append(duration(last[0] + last[1] - offset)).append('"');
+    } else {
+      mpd.append(" type=\"dynamic\" availabilityStartTime=\"")
+          .append(Instant.ofEpochMilli(availabilityStart)).append("\" publishTime=\"")
+          .append(Instant.ofEpochMilli(System.currentTimeMillis()))
+          .append("\" minimumUpdatePeriod=\"").append(duration(SEGMENT_SECONDS * timescale))
+          .append("\" timeShiftBufferDepth=\"")
+          .append(duration(WINDOW * SEGMENT_SECONDS * timescale)).append('"');
+    }
+    mpd.append(" minBufferTime=\"").append(duration(SEGMENT_SECONDS * timescale)).append("\">\n")
+        .append("  <Period id=\"").append(started).append("\" start=\"PT0S\">\n")
+        .append("    <AdaptationSet mimeType=\"").append(mimeType)
+        .append("\" segmentAlignment=\"true\" startWithSAP=\"1\">\n")
+        .append("      <Representation id=\"0\" bandwidth=\"").append(bandwidth).append('"');
+    if (codecs != null) {
+      mpd.append(" codecs=\"").append(codecs).append('"');
+    }
+    mpd.append(">\n")
+        .append("        <SegmentTemplate timescale=\"").append(timescale)
+        .append("\" presentationTimeOffset=\"").append(offset)
+        .append("\" initialization=\"").append(started).append("/init.webm\" media=\"")
+        .append(started).append("/$Number$.webm\" startNumber=\"")
+        .append(number - segments.size()).append("\">\n")
+        .append("          <SegmentTimeline>\n");
+    for (long[] segment : segments) {
+      mpd.append("            <S t=\"").append(segment[0]).append("\" d=\"").append(segment[1])
+          .append("\"/>\n");
+    }
+    return mpd.append("          </SegmentTimeline>\n")
+        .append("        </SegmentTemplate>\n")
+        .append("      </Representation>\n")
+        .append("    </AdaptationSet>\n")
+        .append("  </Period>\n")
+        .append("</MPD>\n").toString();
+  }
+
+  private String duration(long ticks) {
+    return String.format(Locale.ROOT, "PT%.3fS", (double) ticks / timescale);
+  }
+}
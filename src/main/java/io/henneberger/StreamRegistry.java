@@ -0,0 +1,84 @@
+package io.henneberger;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The live broadcasts and the event loops serving them, shared by all {@link StreamingServer}
+ * instances of a deployment.
+ */
+class StreamRegistry {
+
+  private final List<Context> loops = new ArrayList<>();
+  private final ConcurrentMap<String, Broadcast> streams = new ConcurrentHashMap<>();
+  private final Path recordDir;
+  final Path segmentDir;
+
+  StreamRegistry() {
+    this(null, null);
+  }
+
+  /**
+   * @param recordDir where to record each stream with a {@link Recorder}, or null not to
+   * @param segmentDir where to cut each stream into DASH segments with a {@link Segmenter}, or
+   *     null not to
+   */
+  StreamRegistry(Path recordDir, Path segmentDir) {
+    this.recordDir = recordDir;
+    this.segmentDir = segmentDir;
+  }
+
+  /**
+   * Adds the event loop of a server instance.
+   *
+   * @return the index of the loop's shard in every broadcast started from now on
+   */
+  synchronized int register(Context context) {
+    loops.add(context);
+    return loops.size() - 1;
+  }
+
+  /**
+   * Starts a broadcast with a shard on each registered loop.
+   *
+   * @return the new broadcast, or null if {@code id} is already live
+   */
+  Broadcast start(String id, int owner) {
+    Context[] contexts;
+    synchronized (this) {
+      contexts = loops.toArray(new Context[0]);
+    }
+    Broadcast broadcast = new Broadcast(id, contexts, owner, recordDir, segmentDir);
+    return streams.putIfAbsent(id, broadcast) == null ? broadcast : null;
+  }
+
+  Broadcast get(String id) {
+    return streams.get(id);
+  }
+
+  void remove(Broadcast broadcast) {
+    streams.remove(broadcast.id, broadcast);
+  }
+
+  /**
+   * The {@link Metrics} page for every live broadcast.
+   */
+  Future<String> metrics() {
+    List<String> ids = new ArrayList<>();
+    List<Metrics.Shard[]> shards = new ArrayList<>();
+    Future<Void> taken = Future.succeededFuture();
+    for (Broadcast broadcast : streams.values()) {
+      taken = taken.compose(v -> broadcast.metrics().map(metrics -> {
+        ids.add(broadcast.id);
+        shards.add(metrics);
+        return null;
+      }));
+    }
+    return taken.map(v -> Metrics.format(ids, shards));
+  }
+}
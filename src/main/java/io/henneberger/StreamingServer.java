@@ -1,36 +1,76 @@
 package io.henneberger;
 
+import io.netty.handler.codec.http.QueryStringDecoder;
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
-import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpMethod;
 import io.vertx.core.http.HttpServerOptions;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpVersion;
 import io.vertx.core.http.ServerWebSocket;
+import io.vertx.core.net.impl.ConnectionBase;
+import io.vertx.ext.web.Router;
+import io.vertx.ext.web.RoutingContext;
+import io.vertx.ext.web.handler.FileSystemAccess;
+import io.vertx.ext.web.handler.StaticHandler;
 
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.List;
 
+/**
+ * Relays WebM from streamers on {@code /stream/{id}} to viewers on {@code /watch/{id}}, or as a
+ * plain progressive download on {@code /live/{id}.webm}. Deploy
+ * several instances sharing one {@link StreamRegistry}, as {@link #main} does, to spread viewers
+ * over that many event loops. Instances created with the no-argument constructor each have their
+ * own registry.
+ */
 public class StreamingServer extends AbstractVerticle {
 
-  private Set<Viewer> viewers = ConcurrentHashMap.newKeySet();
+  private static final String STREAM_PATH = "/stream/";
+  private static final String WATCH_PATH = "/watch/";
+  private static final String LIVE_PATH = "/live/";
+  private static final String LIVE_SUFFIX = ".webm";
+  private static final String DASH_PATH = "/dash/";
+  private static final String METRICS_PATH = "/metrics";
+  // Segment URLs are never reused, so they can be cached for as long as they are kept
+  private static final long SEGMENT_MAX_AGE_SECONDS = 24 * 60 * 60;
+
+  private final StreamRegistry streams;
+  // This instance's shard in each broadcast
+  private int loop;
+
+  public StreamingServer() {
+    this(new StreamRegistry());
+  }
+
+  StreamingServer(StreamRegistry streams) {
+    this.streams = streams;
+  }
 
   @Override
   public void start() {
+    loop = streams.register(context);
     HttpServerOptions options = new HttpServerOptions()
         .setMaxWebSocketFrameSize(10 * 1024 * 1024) // 10 MB
         .setMaxWebSocketMessageSize(10 * 1024 * 1024); // 10 MB
     HttpServer server = vertx.createHttpServer(options);
 
     server.webSocketHandler(socket -> {
-      if (socket.path().equals("/stream")) {
-        handleStreamSocket(socket);
-      } else if (socket.path().equals("/watch")) {
-        handleWatchSocket(socket);
+      String path = socket.path();
+      if (path.startsWith(STREAM_PATH) && isStreamId(path, STREAM_PATH.length())) {
+        handleStreamSocket(socket, path.substring(STREAM_PATH.length()));
+      } else if (path.startsWith(WATCH_PATH) && isStreamId(path, WATCH_PATH.length())) {
+        handleWatchSocket(socket, path.substring(WATCH_PATH.length()));
       } else {
         socket.reject();
       }
-    }).listen(8080, res -> {
+    }).requestHandler(router()).listen(8080, res -> {
       if (res.succeeded()) {
         System.out.println("Server is now listening on port 8080");
       } else {
@@ -39,64 +79,207 @@ public class StreamingServer extends AbstractVerticle {
     });
   }
 
-  private void handleStreamSocket(ServerWebSocket socket) {
-    socket.frameHandler(frame -> {
-      Buffer data = frame.binaryData();
-      for (Viewer viewer : viewers) {
-        viewer.sendFrame(data);
+  private Router router() {
+    Router router = Router.router(vertx);
+    router.route(LIVE_PATH + "*").handler(ctx -> {
+      String path = ctx.request().path();
+      String name = path.substring(0, path.length() - LIVE_SUFFIX.length());
+      if (path.endsWith(LIVE_SUFFIX) && isStreamId(name, LIVE_PATH.length())) {
+        handleLiveRequest(ctx.request(), name.substring(LIVE_PATH.length()));
+      } else {
+        ctx.next();
       }
     });
+    router.get(METRICS_PATH).handler(ctx -> streams.metrics().onComplete(metrics -> {
+      if (metrics.succeeded()) {
+        ctx.response().putHeader("Content-Type", Metrics.CONTENT_TYPE).end(metrics.result());
+      } else {
+        ctx.fail(metrics.cause());
+      }
+    }));
+    if (streams.segmentDir != null) {
+      router.get(DASH_PATH + "*").handler(dashHandler(streams.segmentDir.toString()));
+    }
+    return router;
   }
 
-  private void handleWatchSocket(ServerWebSocket socket) {
-    Viewer viewer = new Viewer(socket);
-    viewers.add(viewer);
-    socket.closeHandler(v -> viewers.remove(viewer));
+  /**
+   * Serves the files written by {@link Segmenter}. Segments may be cached by browsers and CDNs
+   * alike, manifests must be fetched again each time.
+   */
+  private static Handler<RoutingContext> dashHandler(String root) {
+    StaticHandler segments = StaticHandler.create(FileSystemAccess.ROOT, root)
+        .setFilesReadOnly(false)
+        .setDirectoryListing(false)
+        .setCachingEnabled(true)
+        .setMaxAgeSeconds(SEGMENT_MAX_AGE_SECONDS);
+    StaticHandler manifests = StaticHandler.create(FileSystemAccess.ROOT, root)
+        .setFilesReadOnly(false)
+        .setDirectoryListing(false)
+        .setCachingEnabled(false);
+    return ctx -> {
+      ctx.response().putHeader("Access-Control-Allow-Origin", "*");
+      if (ctx.normalizedPath().endsWith(Segmenter.MANIFEST)) {
+        ctx.response().putHeader("Cache-Control", "no-cache")
+            .putHeader("Content-Type", "application/dash+xml");
+        manifests.handle(ctx);
+      } else {
+        segments.handle(ctx);
+      }
+    };
   }
 
-  class Viewer {
-
-    ServerWebSocket socket;
-    boolean initialBufferSent = false;
-    ConcurrentLinkedQueue<Buffer> pendingFrames = new ConcurrentLinkedQueue<>();
-    boolean sending = false;
+  /**
+   * Whether the rest of {@code path} from {@code start} is a single non-empty path segment that
+   * does not start with a dot, so it can name a directory.
+   */
+  private static boolean isStreamId(String path, int start) {
+    return path.length() > start && path.charAt(start) != '.' && path.indexOf('/', start) < 0;
+  }
 
-    Viewer(ServerWebSocket socket) {
-      this.socket = socket;
+  private static String queryParameter(ServerWebSocket socket, String name) {
+    if (socket.query() == null) {
+      return null;
     }
+    List<String> values = new QueryStringDecoder(socket.query(), false).parameters().get(name);
+    return values != null ? values.get(0) : null;
+  }
 
-    void sendFrame(Buffer data) {
-        writeData(data);
+  /**
+   * Parses a time to watch from: seconds before now as in {@code -60s}, milliseconds since the
+   * epoch or an ISO-8601 instant.
+   *
+   * @return milliseconds since the epoch, or -1 if {@code time} is none of those
+   */
+  static long parseTime(String time) {
+    try {
+      if (time.startsWith("-")) {
+        int end = time.endsWith("s") ? time.length() - 1 : time.length();
+        double seconds = Double.parseDouble(time.substring(1, end));
+        return System.currentTimeMillis() - (long) (seconds * 1000);
+      }
+      if (!time.isEmpty() && time.chars().allMatch(Character::isDigit)) {
+        return Long.parseLong(time);
+      }
+      return Instant.parse(time).toEpochMilli();
+    } catch (NumberFormatException | DateTimeParseException e) {
+      return -1;
     }
+  }
 
-    void sendInitialBuffer(Buffer buffer) {
-      sending = true;
-      socket.writeBinaryMessage(buffer, ar -> {
-        if (ar.succeeded()) {
-          initialBufferSent = true;
-          // Send any pending frames
-          flushPendingFrames();
-        } else {
-          System.err.println("Failed to send initial buffer to viewer: " + ar.cause());
-        }
-        sending = false;
-      });
+  private void handleStreamSocket(ServerWebSocket socket, String id) {
+    Broadcast stream = streams.start(id, loop);
+    if (stream == null) {
+      socket.reject(409);
+      return;
     }
+    socket.closeHandler(v -> {
+      streams.remove(stream);
+      System.out.println(stream.stats());
+      stream.close();
+    });
+    // Whether the message being received is binary, for its continuation frames
+    boolean[] binaryMessage = new boolean[1];
+    socket.frameHandler(frame -> {
+      if (frame.isBinary() || frame.isText()) {
+        binaryMessage[0] = frame.isBinary();
+      }
+      if (!frame.isBinary() && !(frame.isContinuation() && binaryMessage[0])) {
+        return;
+      }
+      try {
+        stream.ingest(frame.binaryData());
+      } catch (IOException e) {
+        System.err.println("Closing streamer, invalid WebM: " + e.getMessage());
+        socket.close();
+      }
+    });
+  }
 
-    void flushPendingFrames() {
-      while (!pendingFrames.isEmpty()) {
-        Buffer frame = pendingFrames.poll();
-        writeData(frame);
+  private void handleWatchSocket(ServerWebSocket socket, String id) {
+    Broadcast stream = streams.get(id);
+    if (stream == null) {
+      socket.reject(404);
+      return;
+    }
+    Playback playback = null;
+    String from = queryParameter(socket, "from");
+    if (from != null) {
+      long time = parseTime(from);
+      if (time < 0) {
+        socket.reject(400);
+        return;
       }
+      playback = stream.playback(vertx, time);
     }
+    Viewer viewer = new WebSocketViewer(socket);
+    if (!stream.addViewer(loop, viewer, playback)) {
+      socket.reject(503);
+      return;
+    }
+    socket.closeHandler(v -> {
+      stream.removeViewer(loop, viewer);
+      if (viewer.droppedBytes() > 0) {
+        System.out.println("Viewer left after dropping " + viewer.droppedBytes() + " bytes");
+      }
+    });
+  }
 
-    void writeData(Buffer data) {
-      socket.writeBinaryMessage(data);
+  /**
+   * Sends the stream as one chunked response that lasts as long as the broadcast. Only over
+   * HTTP/1.x, where the viewer can write chunks to the connection's channel itself.
+   */
+  private void handleLiveRequest(HttpServerRequest request, String id) {
+    if (request.method() != HttpMethod.GET) {
+      request.response().setStatusCode(405).putHeader("Allow", "GET").end();
+      return;
+    }
+    if (request.version() == HttpVersion.HTTP_2) {
+      request.response().setStatusCode(505).end();
+      return;
     }
+    Broadcast stream = streams.get(id);
+    if (stream == null) {
+      request.response().setStatusCode(404).end();
+      return;
+    }
+    Playback playback = null;
+    String from = request.getParam("from");
+    if (from != null) {
+      long time = parseTime(from);
+      if (time < 0) {
+        request.response().setStatusCode(400).end();
+        return;
+      }
+      playback = stream.playback(vertx, time);
+    }
+    request.response().putHeader("Cache-Control", "no-cache");
+    Viewer viewer = new HttpViewer(request.response(), (ConnectionBase) request.connection());
+    if (!stream.addViewer(loop, viewer, playback)) {
+      request.response().setStatusCode(503).end();
+      return;
+    }
+    request.response().closeHandler(v -> {
+      stream.removeViewer(loop, viewer);
+      if (viewer.droppedBytes() > 0) {
+        System.out.println("Viewer left after skipping " + viewer.droppedBytes() + " bytes");
+      }
+    });
   }
 
+  /**
+   * Deploys one instance per core, or as many as the first argument says. Streams are recorded in
+   * the directory given as the second argument, if any and not {@code -}, and cut into DASH
+   * segments served from {@code /dash/} in the directory given as the third.
+   */
   public static void main(String[] args) {
+    int instances = args.length > 0
+        ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+    StreamRegistry streams = new StreamRegistry(
+        args.length > 1 && !args[1].equals("-") ? Paths.get(args[1]) : null,
+        args.length > 2 ? Paths.get(args[2]) : null);
     Vertx vertx = Vertx.vertx();
-    vertx.deployVerticle(new StreamingServer());
+    vertx.deployVerticle(() -> new StreamingServer(streams),
+        new DeploymentOptions().setInstances(instances));
   }
 }
@@ -0,0 +1,173 @@
+package io.henneberger;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import java.io.File;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Someone watching a {@link LiveStream}. The viewer is first sent the MIME type of its stream and
+ * the init segment, then the live bytes from a keyframe Cluster on, read from the stream's
+ * {@link ChunkRing} at the viewer's cursor. How they get to the client is up to the subclass.
+ *
+ * <p>The write queue is bounded and the viewer is only sent more while it is not full. A viewer
+ * that falls too far behind is dropped out of sync and resumes at a later keyframe Cluster with
+ * the MIME type repeated, where the transport can say so.
+ */
+abstract class Viewer {
+
+  static final int MAX_QUEUE_SIZE = 1024 * 1024;
+
+  private static final AtomicLong ids = new AtomicLong();
+
+  // Tells viewers apart in metrics
+  final long id = ids.incrementAndGet();
+  private boolean initSent;
+  // Next sequence number to send, or -1 while out of sync
+  private long cursor = -1;
+  // Stream position up to which the viewer has been sent, or -1 if nothing since the init segment
+  private long position = -1;
+  private long droppedBytes;
+  // Where the viewer is in the recording while it is time-shifted, otherwise null
+  private Playback playback;
+
+  abstract boolean writeQueueFull();
+
+  /**
+   * How the viewer is served, for metrics.
+   */
+  abstract String transport();
+
+  /**
+   * Bytes written to the connection and not sent yet.
+   */
+  abstract long queuedBytes();
+
+  abstract void drainHandler(Handler<Void> handler);
+
+  abstract void close();
+
+  /**
+   * Tells the client the MIME type of what follows, which also means to discard any partial
+   * Cluster.
+   */
+  abstract void writeType(String mimeType);
+
+  abstract void write(Buffer bytes);
+
+  /**
+   * Writes a chunk from the ring without flushing.
+   *
+   * @param frame the chunk encoded by {@link WebSocketViewer#binaryFrame}
+   * @param length the length of the chunk, which ends the frame
+   */
+  abstract void writeChunk(ByteBuf frame, int length);
+
+  abstract void flush();
+
+  /**
+   * Sends part of a file. The bytes go from the file to the socket without being copied through
+   * the heap.
+   */
+  abstract void sendFile(File file, long offset, long length);
+
+  static long queuedBytes(ChannelHandlerContext channel) {
+    ChannelOutboundBuffer buffer = channel.channel().unsafe().outboundBuffer();
+    return buffer != null ? buffer.totalPendingWriteBytes() : 0;
+  }
+
+  /**
+   * Bytes of live data this viewer skipped after its init segment.
+   */
+  long droppedBytes() {
+    return droppedBytes;
+  }
+
+  boolean initSent() {
+    return initSent;
+  }
+
+  boolean synced() {
+    return cursor >= 0;
+  }
+
+  long cursor() {
+    return cursor;
+  }
+
+  long position() {
+    return position;
+  }
+
+  Playback playback() {
+    return playback;
+  }
+
+  void startPlayback(Playback playback) {
+    this.playback = playback;
+  }
+
+  /**
+   * Ends the time shift once the viewer has been sent the recording up to stream position
+   * {@code position}, or -1 if nothing was sent. A {@link #resume} there continues seamlessly.
+   */
+  void endPlayback(long position) {
+    playback = null;
+    this.position = position;
+  }
+
+  void sendInit(String mimeType, Buffer segment) {
+    writeType(mimeType);
+    write(segment);
+    initSent = true;
+    cursor = -1;
+    position = -1;
+  }
+
+  /**
+   * Stops sending until {@link #resume}. What the viewer misses is counted from where it stopped.
+   */
+  void drop() {
+    cursor = -1;
+  }
+
+  /**
+   * Resumes at a keyframe Cluster, or at any Cluster if it is where the viewer stopped.
+   *
+   * @param cluster the bytes from the start of the Cluster to the end of the chunk it starts in
+   * @param clusterPosition the stream position of the Cluster
+   * @param cursor the sequence number of the chunk after that one
+   * @param end the stream position after that chunk
+   */
+  void resume(String mimeType, Buffer cluster, long clusterPosition, long cursor, long end) {
+    if (position >= 0 && position != clusterPosition) {
+      writeType(mimeType);
+      droppedBytes += clusterPosition - position;
+    }
+    write(cluster);
+    this.cursor = cursor;
+    position = end;
+  }
+
+  /**
+   * Writes the chunks from the cursor on until the ring is drained or the write queue is full.
+   */
+  void send(ChunkRing ring) {
+    if (cursor < 0) {
+      return;
+    }
+    boolean written = false;
+    while (cursor < ring.head() && !writeQueueFull()) {
+      writeChunk(ring.frame(cursor), ring.chunk(cursor).length());
+      position = ring.end(cursor);
+      cursor++;
+      written = true;
+    }
+    if (written) {
+      flush();
+    }
+  }
+}
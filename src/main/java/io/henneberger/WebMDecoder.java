@@ -1,617 +1,1121 @@
 package io.henneberger;
 
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.ForkJoinPool;
 
 public class WebMDecoder {
 
   // EBML Header Elements
-  private static final int EBML = 0x1A45DFA3;
-  private static final int EBML_VERSION = 0x4286;
-  private static final int EBML_READ_VERSION = 0x42F7;
-  private static final int EBML_MAX_ID_LENGTH = 0x42F2;
-  private static final int EBML_MAX_SIZE_LENGTH = 0x42F3;
-  private static final int DOC_TYPE = 0x4282;
-  private static final int DOC_TYPE_VERSION = 0x4287;
-  private static final int DOC_TYPE_READ_VERSION = 0x4285;
-  private static final int DOC_TYPE_EXTENSION = 0x4281;
-  private static final int DOC_TYPE_EXTENSION_NAME = 0x4283;
-  private static final int DOC_TYPE_EXTENSION_VERSION = 0x4284;
+  static final int EBML = 0x1A45DFA3;
+  static final int EBML_VERSION = 0x4286;
+  static final int EBML_READ_VERSION = 0x42F7;
+  static final int EBML_MAX_ID_LENGTH = 0x42F2;
+  static final int EBML_MAX_SIZE_LENGTH = 0x42F3;
+  static final int DOC_TYPE = 0x4282;
+  static final int DOC_TYPE_VERSION = 0x4287;
+  static final int DOC_TYPE_READ_VERSION = 0x4285;
+  static final int DOC_TYPE_EXTENSION = 0x4281;
+  static final int DOC_TYPE_EXTENSION_NAME = 0x4283;
+  static final int DOC_TYPE_EXTENSION_VERSION = 0x4284;
 
   // Segment Elements
-  private static final int SEGMENT = 0x18538067;
+  static final int SEGMENT = 0x18538067;
 
   // Top-Level Elements
-  private static final int SEEK_HEAD = 0x114D9B74;
-  private static final int INFO = 0x1549A966;
-  private static final int TRACKS = 0x1654AE6B;
-  private static final int CHAPTERS = 0x1043A770;
-  private static final int CLUSTER = 0x1F43B675;
-  private static final int CUES = 0x1C53BB6B;
-  private static final int ATTACHMENTS = 0x1941A469;
-  private static final int TAGS = 0x1254C367;
+  static final int SEEK_HEAD = 0x114D9B74;
+  static final int INFO = 0x1549A966;
+  static final int TRACKS = 0x1654AE6B;
+  static final int CHAPTERS = 0x1043A770;
+  static final int CLUSTER = 0x1F43B675;
+  static final int CUES = 0x1C53BB6B;
+  static final int ATTACHMENTS = 0x1941A469;
+  static final int TAGS = 0x1254C367;
 
   // SeekHead Elements
-  private static final int SEEK = 0x4DBB;
-  private static final int SEEK_ID = 0x53AB;
-  private static final int SEEK_POSITION = 0x53AC;
+  static final int SEEK = 0x4DBB;
+  static final int SEEK_ID = 0x53AB;
+  static final int SEEK_POSITION = 0x53AC;
 
   // Info Elements
-  private static final int SEGMENT_UUID = 0x73A4;
-  private static final int SEGMENT_FILENAME = 0x7384;
-  private static final int PREV_UUID = 0x3CB923;
-  private static final int PREV_FILENAME = 0x3C83AB;
-  private static final int NEXT_UUID = 0x3EB923;
-  private static final int NEXT_FILENAME = 0x3E83BB;
-  private static final int SEGMENT_FAMILY = 0x4444;
-  private static final int CHAPTER_TRANSLATE = 0x6924;
-  private static final int TIMESTAMP_SCALE = 0x2AD7B1;
-  private static final int DURATION = 0x4489;
-  private static final int DATE_UTC = 0x4461;
-  private static final int TITLE = 0x7BA9;
-  private static final int MUXING_APP = 0x4D80;
-  private static final int WRITING_APP = 0x5741;
+  static final int SEGMENT_UUID = 0x73A4;
+  static final int SEGMENT_FILENAME = 0x7384;
+  static final int PREV_UUID = 0x3CB923;
+  static final int PREV_FILENAME = 0x3C83AB;
+  static final int NEXT_UUID = 0x3EB923;
+  static final int NEXT_FILENAME = 0x3E83BB;
+  static final int SEGMENT_FAMILY = 0x4444;
+  static final int CHAPTER_TRANSLATE = 0x6924;
+  static final int TIMESTAMP_SCALE = 0x2AD7B1;
+  static final int DURATION = 0x4489;
+  static final int DATE_UTC = 0x4461;
+  static final int TITLE = 0x7BA9;
+  static final int MUXING_APP = 0x4D80;
+  static final int WRITING_APP = 0x5741;
 
   // Cluster Elements
-  private static final int TIMESTAMP = 0xE7;
-  private static final int POSITION = 0xA7;
-  private static final int PREV_SIZE = 0xAB;
-  private static final int SIMPLE_BLOCK = 0xA3;
-  private static final int BLOCK_GROUP = 0xA0;
-  private static final int BLOCK = 0xA1;
-  private static final int BLOCK_DURATION = 0x9B;
-  private static final int REFERENCE_BLOCK = 0xFB;
+  static final int TIMESTAMP = 0xE7;
+  static final int POSITION = 0xA7;
+  static final int PREV_SIZE = 0xAB;
+  static final int SIMPLE_BLOCK = 0xA3;
+  static final int BLOCK_GROUP = 0xA0;
+  static final int BLOCK = 0xA1;
+  static final int BLOCK_DURATION = 0x9B;
+  static final int REFERENCE_BLOCK = 0xFB;
 
   // Tracks Elements
-  private static final int TRACK_ENTRY = 0xAE;
-  private static final int TRACK_NUMBER = 0xD7;
-  private static final int TRACK_UID = 0x73C5;
-  private static final int TRACK_TYPE = 0x83;
-  private static final int FLAG_ENABLED = 0xB9;
-  private static final int FLAG_DEFAULT = 0x88;
-  private static final int FLAG_FORCED = 0x55AA;
-  private static final int FLAG_HEARING_IMPAIRED = 0x55AB;
-  private static final int FLAG_VISUAL_IMPAIRED = 0x55AC;
-  private static final int FLAG_TEXT_DESCRIPTIONS = 0x55AD;
-  private static final int FLAG_ORIGINAL = 0x55AE;
-  private static final int FLAG_COMMENTARY = 0x55AF;
-  private static final int FLAG_LACING = 0x9C;
-  private static final int MIN_CACHE = 0x6DE7;
-  private static final int MAX_CACHE = 0x6DF8;
-  private static final int DEFAULT_DURATION = 0x23E383;
-  private static final int DEFAULT_DECODED_FIELD_DURATION = 0x234E7A;
-  private static final int TRACK_TIMESTAMP_SCALE = 0x23314F;
-  private static final int TRACK_OFFSET = 0x537F;
-  private static final int MAX_BLOCK_ADDITION_ID = 0x55EE;
-  private static final int BLOCK_ADDITION_MAPPING = 0x41E4;
-  private static final int BLOCK_ADD_ID_VALUE = 0x41F0;
-  private static final int BLOCK_ADD_ID_NAME = 0x41A4;
-  private static final int BLOCK_ADD_ID_TYPE = 0x41E7;
-  private static final int BLOCK_ADD_ID_EXTRA_DATA = 0x41ED;
-  private static final int NAME = 0x536E;
-  private static final int LANGUAGE = 0x22B59C;
-  private static final int LANGUAGE_BCP47 = 0x22B59D;
-  private static final int CODEC_ID = 0x86;
-  private static final int CODEC_PRIVATE = 0x63A2;
-  private static final int CODEC_NAME = 0x258688;
-  private static final int ATTACHMENT_LINK = 0x7446;
-  private static final int CODEC_SETTINGS = 0x3A9697;
-  private static final int CODEC_INFO_URL = 0x3B4040;
-  private static final int CODEC_DOWNLOAD_URL = 0x26B240;
-  private static final int CODEC_DECODE_ALL = 0xAA;
-  private static final int TRACK_OVERLAY = 0x6FAB;
-  private static final int CODEC_DELAY = 0x56AA;
-  private static final int SEEK_PRE_ROLL = 0x56BB;
-  private static final int TRACK_TRANSLATE = 0x6624;
-  private static final int TRACK_TRANSLATE_TRACK_ID = 0x66A5;
-  private static final int TRACK_TRANSLATE_CODEC = 0x66BF;
-  private static final int TRACK_TRANSLATE_EDITION_UID = 0x66FC;
-  private static final int VIDEO = 0xE0;
-  private static final int AUDIO = 0xE1;
-  private static final int TRACK_OPERATION = 0xE2;
-  private static final int TRACK_COMBINE_PLANES = 0xE3;
-  private static final int TRACK_PLANE = 0xE4;
-  private static final int TRACK_PLANE_UID = 0xE5;
-  private static final int TRACK_PLANE_TYPE = 0xE6;
-  private static final int TRACK_JOIN_BLOCKS = 0xE9;
-  private static final int TRACK_JOIN_UID = 0xED;
-  private static final int TRICK_TRACK_UID = 0xC0;
-  private static final int TRICK_TRACK_SEGMENT_UID = 0xC1;
-  private static final int TRICK_TRACK_FLAG = 0xC6;
-  private static final int TRICK_MASTER_TRACK_UID = 0xC7;
-  private static final int TRICK_MASTER_TRACK_SEGMENT_UID = 0xC4;
-  private static final int CONTENT_ENCODINGS = 0x6D80;
+  static final int TRACK_ENTRY = 0xAE;
+  static final int TRACK_NUMBER = 0xD7;
+  static final int TRACK_UID = 0x73C5;
+  static final int TRACK_TYPE = 0x83;
+  static final int FLAG_ENABLED = 0xB9;
+  static final int FLAG_DEFAULT = 0x88;
+  static final int FLAG_FORCED = 0x55AA;
+  static final int FLAG_HEARING_IMPAIRED = 0x55AB;
+  static final int FLAG_VISUAL_IMPAIRED = 0x55AC;
+  static final int FLAG_TEXT_DESCRIPTIONS = 0x55AD;
+  static final int FLAG_ORIGINAL = 0x55AE;
+  static final int FLAG_COMMENTARY = 0x55AF;
+  static final int FLAG_LACING = 0x9C;
+  static final int MIN_CACHE = 0x6DE7;
+  static final int MAX_CACHE = 0x6DF8;
+  static final int DEFAULT_DURATION = 0x23E383;
+  static final int DEFAULT_DECODED_FIELD_DURATION = 0x234E7A;
+  static final int TRACK_TIMESTAMP_SCALE = 0x23314F;
+  static final int TRACK_OFFSET = 0x537F;
+  static final int MAX_BLOCK_ADDITION_ID = 0x55EE;
+  static final int BLOCK_ADDITION_MAPPING = 0x41E4;
+  static final int BLOCK_ADD_ID_VALUE = 0x41F0;
+  static final int BLOCK_ADD_ID_NAME = 0x41A4;
+  static final int BLOCK_ADD_ID_TYPE = 0x41E7;
+  static final int BLOCK_ADD_ID_EXTRA_DATA = 0x41ED;
+  static final int NAME = 0x536E;
+  static final int LANGUAGE = 0x22B59C;
+  static final int LANGUAGE_BCP47 = 0x22B59D;
+  static final int CODEC_ID = 0x86;
+  static final int CODEC_PRIVATE = 0x63A2;
+  static final int CODEC_NAME = 0x258688;
+  static final int ATTACHMENT_LINK = 0x7446;
+  static final int CODEC_SETTINGS = 0x3A9697;
+  static final int CODEC_INFO_URL = 0x3B4040;
+  static final int CODEC_DOWNLOAD_URL = 0x26B240;
+  static final int CODEC_DECODE_ALL = 0xAA;
+  static final int TRACK_OVERLAY = 0x6FAB;
+  static final int CODEC_DELAY = 0x56AA;
+  static final int SEEK_PRE_ROLL = 0x56BB;
+  static final int TRACK_TRANSLATE = 0x6624;
+  static final int TRACK_TRANSLATE_TRACK_ID = 0x66A5;
+  static final int TRACK_TRANSLATE_CODEC = 0x66BF;
+  static final int TRACK_TRANSLATE_EDITION_UID = 0x66FC;
+  static final int VIDEO = 0xE0;
+  static final int AUDIO = 0xE1;
+  static final int TRACK_OPERATION = 0xE2;
+  static final int TRACK_COMBINE_PLANES = 0xE3;
+  static final int TRACK_PLANE = 0xE4;
+  static final int TRACK_PLANE_UID = 0xE5;
+  static final int TRACK_PLANE_TYPE = 0xE6;
+  static final int TRACK_JOIN_BLOCKS = 0xE9;
+  static final int TRACK_JOIN_UID = 0xED;
+  static final int TRICK_TRACK_UID = 0xC0;
+  static final int TRICK_TRACK_SEGMENT_UID = 0xC1;
+  static final int TRICK_TRACK_FLAG = 0xC6;
+  static final int TRICK_MASTER_TRACK_UID = 0xC7;
+  static final int TRICK_MASTER_TRACK_SEGMENT_UID = 0xC4;
+  static final int CONTENT_ENCODINGS = 0x6D80;
 
   // Video Elements
-  private static final int FLAG_INTERLACED = 0x9A;
-  private static final int FIELD_ORDER = 0x9D;
-  private static final int STEREO_MODE = 0x53B8;
-  private static final int ALPHA_MODE = 0x53C0;
-  private static final int PIXEL_WIDTH = 0xB0;
-  private static final int PIXEL_HEIGHT = 0xBA;
-  private static final int PIXEL_CROP_BOTTOM = 0x54AA;
-  private static final int PIXEL_CROP_TOP = 0x54BB;
-  private static final int PIXEL_CROP_LEFT = 0x54CC;
-  private static final int PIXEL_CROP_RIGHT = 0x54DD;
-  private static final int DISPLAY_WIDTH = 0x54B0;
-  private static final int DISPLAY_HEIGHT = 0x54BA;
-  private static final int DISPLAY_UNIT = 0x54B2;
-  private static final int ASPECT_RATIO_TYPE = 0x54B3;
-  private static final int COLOUR = 0x55B0;
-  private static final int GAMMA_VALUE = 0x2FB523;
-  private static final int FRAME_RATE = 0x2383E3;
-  private static final int UNCOMPRESSED_FOURCC = 0x2EB524;
-  private static final int PROJECTION = 0x7670;
+  static final int FLAG_INTERLACED = 0x9A;
+  static final int FIELD_ORDER = 0x9D;
+  static final int STEREO_MODE = 0x53B8;
+  static final int ALPHA_MODE = 0x53C0;
+  static final int PIXEL_WIDTH = 0xB0;
+  static final int PIXEL_HEIGHT = 0xBA;
+  static final int PIXEL_CROP_BOTTOM = 0x54AA;
+  static final int PIXEL_CROP_TOP = 0x54BB;
+  static final int PIXEL_CROP_LEFT = 0x54CC;
+  static final int PIXEL_CROP_RIGHT = 0x54DD;
+  static final int DISPLAY_WIDTH = 0x54B0;
+  static final int DISPLAY_HEIGHT = 0x54BA;
+  static final int DISPLAY_UNIT = 0x54B2;
+  static final int ASPECT_RATIO_TYPE = 0x54B3;
+  static final int COLOUR = 0x55B0;
+  static final int GAMMA_VALUE = 0x2FB523;
+  static final int FRAME_RATE = 0x2383E3;
+  static final int UNCOMPRESSED_FOURCC = 0x2EB524;
+  static final int PROJECTION = 0x7670;
 
   // Colour Elements
-  private static final int MATRIX_COEFFICIENTS = 0x55B1;
-  private static final int BITS_PER_CHANNEL = 0x55B2;
-  private static final int CHROMA_SUBSAMPLING_HORZ = 0x55B3;
-  private static final int CHROMA_SUBSAMPLING_VERT = 0x55B4;
-  private static final int CB_SUBSAMPLING_HORZ = 0x55B5;
-  private static final int CB_SUBSAMPLING_VERT = 0x55B6;
-  private static final int CHROMA_SITING_HORZ = 0x55B7;
-  private static final int CHROMA_SITING_VERT = 0x55B8;
-  private static final int RANGE = 0x55B9;
-  private static final int TRANSFER_CHARACTERISTICS = 0x55BA;
-  private static final int PRIMARIES = 0x55BB;
-  private static final int MAX_CLL = 0x55BC;
-  private static final int MAX_FALL = 0x55BD;
-  private static final int MASTERING_METADATA = 0x55D0;
+  static final int MATRIX_COEFFICIENTS = 0x55B1;
+  static final int BITS_PER_CHANNEL = 0x55B2;
+  static final int CHROMA_SUBSAMPLING_HORZ = 0x55B3;
+  static final int CHROMA_SUBSAMPLING_VERT = 0x55B4;
+  static final int CB_SUBSAMPLING_HORZ = 0x55B5;
+  static final int CB_SUBSAMPLING_VERT = 0x55B6;
+  static final int CHROMA_SITING_HORZ = 0x55B7;
+  static final int CHROMA_SITING_VERT = 0x55B8;
+  static final int RANGE = 0x55B9;
+  static final int TRANSFER_CHARACTERISTICS = 0x55BA;
+  static final int PRIMARIES = 0x55BB;
+  static final int MAX_CLL = 0x55BC;
+  static final int MAX_FALL = 0x55BD;
+  static final int MASTERING_METADATA = 0x55D0;
 
   // MasteringMetadata Elements
-  private static final int PRIMARY_R_CHROMATICITY_X = 0x55D1;
-  private static final int PRIMARY_R_CHROMATICITY_Y = 0x55D2;
-  private static final int PRIMARY_G_CHROMATICITY_X = 0x55D3;
-  private static final int PRIMARY_G_CHROMATICITY_Y = 0x55D4;
-  private static final int PRIMARY_B_CHROMATICITY_X = 0x55D5;
-  private static final int PRIMARY_B_CHROMATICITY_Y = 0x55D6;
-  private static final int WHITE_POINT_CHROMATICITY_X = 0x55D7;
-  private static final int WHITE_POINT_CHROMATICITY_Y = 0x55D8;
-  private static final int LUMINANCE_MAX = 0x55D9;
-  private static final int LUMINANCE_MIN = 0x55DA;
+  static final int PRIMARY_R_CHROMATICITY_X = 0x55D1;
+  static final int PRIMARY_R_CHROMATICITY_Y = 0x55D2;
+  static final int PRIMARY_G_CHROMATICITY_X = 0x55D3;
+  static final int PRIMARY_G_CHROMATICITY_Y = 0x55D4;
+  static final int PRIMARY_B_CHROMATICITY_X = 0x55D5;
+  static final int PRIMARY_B_CHROMATICITY_Y = 0x55D6;
+  static final int WHITE_POINT_CHROMATICITY_X = 0x55D7;
+  static final int WHITE_POINT_CHROMATICITY_Y = 0x55D8;
+  static final int LUMINANCE_MAX = 0x55D9;
+  static final int LUMINANCE_MIN = 0x55DA;
 
   // Projection Elements
-  private static final int PROJECTION_TYPE = 0x7671;
-  private static final int PROJECTION_PRIVATE = 0x7672;
-  private static final int PROJECTION_POSE_YAW = 0x7673;
-  private static final int PROJECTION_POSE_PITCH = 0x7674;
-  private static final int PROJECTION_POSE_ROLL = 0x7675;
+  static final int PROJECTION_TYPE = 0x7671;
+  static final int PROJECTION_PRIVATE = 0x7672;
+  static final int PROJECTION_POSE_YAW = 0x7673;
+  static final int PROJECTION_POSE_PITCH = 0x7674;
+  static final int PROJECTION_POSE_ROLL = 0x7675;
 
   // Audio Elements
-  private static final int SAMPLING_FREQUENCY = 0xB5;
-  private static final int OUTPUT_SAMPLING_FREQUENCY = 0x78B5;
-  private static final int CHANNELS = 0x9F;
-  private static final int CHANNEL_POSITIONS = 0x7D7B;
-  private static final int BIT_DEPTH = 0x6264;
-  private static final int EMPHASIS = 0x52F1;
+  static final int SAMPLING_FREQUENCY = 0xB5;
+  static final int OUTPUT_SAMPLING_FREQUENCY = 0x78B5;
+  static final int CHANNELS = 0x9F;
+  static final int CHANNEL_POSITIONS = 0x7D7B;
+  static final int BIT_DEPTH = 0x6264;
+  static final int EMPHASIS = 0x52F1;
 
   // ContentEncodings Elements
-  private static final int CONTENT_ENCODING = 0x6240;
-  private static final int CONTENT_ENCODING_ORDER = 0x5031;
-  private static final int CONTENT_ENCODING_SCOPE = 0x5032;
-  private static final int CONTENT_ENCODING_TYPE = 0x5033;
-  private static final int CONTENT_COMPRESSION = 0x5034;
-  private static final int CONTENT_COMP_ALGO = 0x4254;
-  private static final int CONTENT_COMP_SETTINGS = 0x4255;
-  private static final int CONTENT_ENCRYPTION = 0x5035;
-  private static final int CONTENT_ENC_ALGO = 0x47E1;
-  private static final int CONTENT_ENC_KEY_ID = 0x47E2;
-  private static final int CONTENT_ENC_AES_SETTINGS = 0x47E7;
-  private static final int AES_SETTINGS_CIPHER_MODE = 0x47E8;
-  private static final int CONTENT_SIGNATURE = 0x47E3;
-  private static final int CONTENT_SIG_KEY_ID = 0x47E4;
-  private static final int CONTENT_SIG_ALGO = 0x47E5;
-  private static final int CONTENT_SIG_HASH_ALGO = 0x47E6;
+  static final int CONTENT_ENCODING = 0x6240;
+  static final int CONTENT_ENCODING_ORDER = 0x5031;
+  static final int CONTENT_ENCODING_SCOPE = 0x5032;
+  static final int CONTENT_ENCODING_TYPE = 0x5033;
+  static final int CONTENT_COMPRESSION = 0x5034;
+  static final int CONTENT_COMP_ALGO = 0x4254;
+  static final int CONTENT_COMP_SETTINGS = 0x4255;
+  static final int CONTENT_ENCRYPTION = 0x5035;
+  static final int CONTENT_ENC_ALGO = 0x47E1;
+  static final int CONTENT_ENC_KEY_ID = 0x47E2;
+  static final int CONTENT_ENC_AES_SETTINGS = 0x47E7;
+  static final int AES_SETTINGS_CIPHER_MODE = 0x47E8;
+  static final int CONTENT_SIGNATURE = 0x47E3;
+  static final int CONTENT_SIG_KEY_ID = 0x47E4;
+  static final int CONTENT_SIG_ALGO = 0x47E5;
+  static final int CONTENT_SIG_HASH_ALGO = 0x47E6;
 
   // Cues Elements
-  private static final int CUE_POINT = 0xBB;
-  private static final int CUE_TIME = 0xB3;
-  private static final int CUE_TRACK_POSITIONS = 0xB7;
-  private static final int CUE_TRACK = 0xF7;
-  private static final int CUE_CLUSTER_POSITION = 0xF1;
+  static final int CUE_POINT = 0xBB;
+  static final int CUE_TIME = 0xB3;
+  static final int CUE_TRACK_POSITIONS = 0xB7;
+  static final int CUE_TRACK = 0xF7;
+  static final int CUE_CLUSTER_POSITION = 0xF1;
 
   // Attachments Elements
-  private static final int ATTACHED_FILE = 0x61A7;
-  private static final int FILE_DESCRIPTION = 0x467E;
-  private static final int FILE_NAME = 0x466E;
-  private static final int FILE_DATA = 0x465C;
-  private static final int FILE_UID = 0x46AE;
+  static final int ATTACHED_FILE = 0x61A7;
+  static final int FILE_DESCRIPTION = 0x467E;
+  static final int FILE_NAME = 0x466E;
+  static final int FILE_DATA = 0x465C;
+  static final int FILE_UID = 0x46AE;
 
   // Chapters Elements
-  private static final int EDITION_ENTRY = 0x45B9;
-  private static final int EDITION_UID = 0x45BC;
-  private static final int EDITION_FLAG_DEFAULT = 0x45DB;
-  private static final int EDITION_FLAG_ORDERED = 0x45DD;
-  private static final int CHAPTER_ATOM = 0xB6;
-  private static final int CHAPTER_UID = 0x73C4;
-  private static final int CHAPTER_STRING_UID = 0x5654;
-  private static final int CHAPTER_TIME_START = 0x91;
-  private static final int CHAPTER_TIME_END = 0x92;
-  private static final int CHAPTER_FLAG_HIDDEN = 0x98;
-  private static final int CHAPTER_DISPLAY = 0x80;
-  private static final int CHAP_STRING = 0x85;
-  private static final int CHAP_LANGUAGE = 0x437C;
+  static final int EDITION_ENTRY = 0x45B9;
+  static final int EDITION_UID = 0x45BC;
+  static final int EDITION_FLAG_DEFAULT = 0x45DB;
+  static final int EDITION_FLAG_ORDERED = 0x45DD;
+  static final int CHAPTER_ATOM = 0xB6;
+  static final int CHAPTER_UID = 0x73C4;
+  static final int CHAPTER_STRING_UID = 0x5654;
+  static final int CHAPTER_TIME_START = 0x91;
+  static final int CHAPTER_TIME_END = 0x92;
+  static final int CHAPTER_FLAG_HIDDEN = 0x98;
+  static final int CHAPTER_DISPLAY = 0x80;
+  static final int CHAP_STRING = 0x85;
+  static final int CHAP_LANGUAGE = 0x437C;
 
   // Tags Elements
-  private static final int TAG = 0x7373;
-  private static final int TARGETS = 0x63C0;
-  private static final int TARGET_TYPE_VALUE = 0x68CA;
-  private static final int TARGET_TYPE = 0x63CA;
-  private static final int TAG_TRACK_UID = 0x63C5;
-  private static final int TAG_EDITION_UID = 0x63C9;
-  private static final int TAG_CHAPTER_UID = 0x63C4;
-  private static final int TAG_ATTACHMENT_UID = 0x63C6;
-  private static final int SIMPLE_TAG = 0x67C8;
-  private static final int TAG_NAME = 0x45A3;
-  private static final int TAG_LANGUAGE = 0x447A;
-  private static final int TAG_DEFAULT = 0x4484;
-  private static final int TAG_STRING = 0x4487;
-  private static final int TAG_BINARY = 0x4485;
+  static final int TAG = 0x7373;
+  static final int TARGETS = 0x63C0;
+  static final int TARGET_TYPE_VALUE = 0x68CA;
+  static final int TARGET_TYPE = 0x63CA;
+  static final int TAG_TRACK_UID = 0x63C5;
+  static final int TAG_EDITION_UID = 0x63C9;
+  static final int TAG_CHAPTER_UID = 0x63C4;
+  static final int TAG_ATTACHMENT_UID = 0x63C6;
+  static final int SIMPLE_TAG = 0x67C8;
+  static final int TAG_NAME = 0x45A3;
+  static final int TAG_LANGUAGE = 0x447A;
+  static final int TAG_DEFAULT = 0x4484;
+  static final int TAG_STRING = 0x4487;
+  static final int TAG_BINARY = 0x4485;
 
   // Global Elements
-  private static final int CRC_32 = 0xBF;
-  private static final int VOID = 0xEC;
+  static final int CRC_32 = 0xBF;
+  static final int VOID = 0xEC;
+
+  /**
+   * Data size reported for elements written before their length was known, such as the Segment
+   * and Clusters of a live recording.
+   */
+  public static final long UNKNOWN_SIZE = -1;
+
+  private static final int MAX_HEADER_SIZE = 16;
+  static final long WINDOW_SIZE = 64 * 1024 * 1024;
+  static final long RUN_SIZE = 8 * 1024 * 1024;
+
+  private final WebMHandler handler;
+
+  // Current input, see window()
+  private FileChannel channel;
+  private ByteBuffer window;
+  private long windowBase;
+  private long inputLength;
+
+  // Reused across blocks so that frame delivery neither copies nor allocates
+  private final int[] laceSizes = new int[256];
+  private ByteBuffer payloadSource;
+  private ByteBuffer payload;
+
+  // Current Segment
+  private long segmentStart;
+  private long segmentSize;
+  private long timestampScale;
+  private long videoTrack;
+  private long cuesPosition;
+
+  // Set while building a ClusterIndex, see index() and cues()
+  private ClusterIndex index;
+  private ClusterIndex cueTable;
+
+  // Set while decoding on a pool, see decodeParallel(). Runs are replayed oldest first.
+  private ForkJoinPool pool;
+  private ClusterRun run;
+  private final ArrayDeque<ClusterRun> runs = new ArrayDeque<>();
+
+  public WebMDecoder() {
+    this(WebMHandler.NO_OP);
+  }
+
+  public WebMDecoder(WebMHandler handler) {
+    this.handler = handler;
+  }
 
   public void decode(InputStream inputStream) throws IOException {
-    DataInputStream dis = new DataInputStream(inputStream);
+    decode(ByteBuffer.wrap(inputStream.readAllBytes()));
+  }
 
-    while (dis.available() > 0) {
-      EBMLElement idElement = readElementId(dis);
-      EBMLElement sizeElement = readElementSize(dis);
+  /**
+   * Decodes the remaining bytes of {@code buffer}. Frame payloads are handed to the handler as views
+   * over this buffer, so it must not be modified until decoding returns.
+   */
+  public void decode(ByteBuffer buffer) throws IOException {
+    window = buffer.slice();
+    windowBase = 0;
+    inputLength = window.limit();
+    try {
+      decodeElements();
+    } finally {
+      window = null;
+    }
+  }
 
-      long elementId = idElement.idOrSize;
-      long size = sizeElement.idOrSize;
+  /**
+   * Decodes a file by memory-mapping it in windows of {@link #WINDOW_SIZE} bytes, so the heap used
+   * does not depend on the file size. Frame payloads are views over the mapped window.
+   */
+  public void decode(Path path) throws IOException {
+    try (FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+      channel = fileChannel;
+      windowBase = 0;
+      inputLength = fileChannel.size();
+      decodeElements();
+    } finally {
+      channel = null;
+      window = null;
+    }
+  }
 
-      switch ((int) elementId) {
-        case EBML:
-          System.out.println("Found EBML Header");
-          parseEbmlHeader(dis, size);
-          break;
-        case SEGMENT:
-          System.out.println("Found Segment");
-          parseSegment(dis, size);
-          break;
-        default:
-          System.out.println("Skipping unknown element: " + Long.toHexString(elementId));
-          dis.skipBytes((int) size);
-          break;
+  /**
+   * Builds a {@link ClusterIndex} of a file without reading block payloads. Only the Segment Info
+   * and Tracks are decoded and passed to the handler; of each Cluster just the Timestamp and the
+   * header of its first video block are read before jumping to the next one.
+   */
+  public ClusterIndex index(Path path) throws IOException {
+    index = new ClusterIndex();
+    try {
+      decode(path);
+      index.setTimestampScale(timestampScale);
+      return index;
+    } finally {
+      index = null;
+    }
+  }
+
+  /**
+   * Builds a {@link ClusterIndex} of the remaining bytes of {@code buffer}, see {@link #index(Path)}.
+   */
+  public ClusterIndex index(ByteBuffer buffer) throws IOException {
+    index = new ClusterIndex();
+    try {
+      decode(buffer);
+      index.setTimestampScale(timestampScale);
+      return index;
+    } finally {
+      index = null;
+    }
+  }
+
+  /**
+   * Reads the cue table of a file. The EBML header and the level 1 elements before the first
+   * Cluster are decoded and passed to the handler as usual, then the Cues are read in one go from
+   * the position the SeekHead gives. A file without Cues falls back to {@link #index(Path)}.
+   */
+  public ClusterIndex cues(Path path) throws IOException {
+    try (FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+      channel = fileChannel;
+      windowBase = 0;
+      inputLength = fileChannel.size();
+      return readCues(openSegment());
+    } finally {
+      channel = null;
+      window = null;
+    }
+  }
+
+  /**
+   * Decodes a file from the Cluster holding {@code timeMillis}, see {@link #seek(Path, ClusterIndex,
+   * long)}. The cue table is read first.
+   */
+  public void seek(Path path, long timeMillis) throws IOException {
+    seek(path, null, timeMillis);
+  }
+
+  /**
+   * Decodes the first Segment of a file from the Cluster holding {@code timeMillis}. The handler
+   * receives the EBML header and the level 1 elements before the first Cluster, then everything
+   * from the keyframe Cluster found by {@link ClusterIndex#seek(long)} to the end of the Segment;
+   * nothing in between is read.
+   *
+   * @param cues the table returned by {@link #cues(Path)} for this file, or null to read it
+   */
+  public void seek(Path path, ClusterIndex cues, long timeMillis) throws IOException {
+    try (FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+      channel = fileChannel;
+      windowBase = 0;
+      inputLength = fileChannel.size();
+      long firstCluster = openSegment();
+      if (cues == null) {
+        cues = readCues(firstCluster);
       }
+      int i = cues.seek(timeMillis);
+      long start = i < 0 ? firstCluster : Math.max(cues.offset(i), firstCluster);
+      parseSegment(start, segmentSize == UNKNOWN_SIZE
+          ? UNKNOWN_SIZE : segmentStart + segmentSize - start);
+    } finally {
+      channel = null;
+      window = null;
     }
   }
 
-  private EBMLElement readElementId(DataInputStream dis) throws IOException {
-    int firstByte = dis.readUnsignedByte();
-    int mask = 0x80;
-    int length = 1;
-    while ((firstByte & mask) == 0) {
-      mask >>= 1;
-      length++;
-      if (mask == 0) {
-        throw new IOException("Invalid EBML ID leading bits");
+  /**
+   * Decodes the EBML header and the level 1 elements before the first Cluster of the first Segment
+   * and returns the offset of that Cluster, or of the end of the Segment if it has none.
+   */
+  private long openSegment() throws IOException {
+    long offset = 0;
+    while (true) {
+      if (offset >= inputLength) {
+        throw new IOException("No Segment found");
+      }
+      ByteBuffer buf = header(offset);
+      long elementId = readElementId(buf);
+      long size = readElementSize(buf);
+      long bodyOffset = windowBase + buf.position();
+
+      if (elementId == SEGMENT) {
+        startSegment(bodyOffset, size);
+        break;
+      }
+      if (elementId == EBML) {
+        parseEbmlHeader(window(bodyOffset, knownSize(elementId, size)), size);
       }
+      offset = bodyOffset + knownSize(elementId, size);
     }
 
-//        if (length > 4) {
-//            throw new IOException("EBML ID length too long: "+ length);
-//        }
+    boolean unknownSize = segmentSize == UNKNOWN_SIZE;
+    long end = unknownSize ? inputLength : Math.min(segmentStart + segmentSize, inputLength);
+    offset = segmentStart;
+    while (offset < end) {
+      ByteBuffer buf = header(offset);
+      long elementId = readElementId(buf);
+      long elementSize = readElementSize(buf);
+      long bodyOffset = windowBase + buf.position();
+
+      if (elementId == CLUSTER || (unknownSize && (elementId == EBML || elementId == SEGMENT))) {
+        return offset;
+      }
+      if (isTopLevel(elementId)) {
+        parseElement(elementId, elementSize,
+            window(bodyOffset, knownSize(elementId, elementSize)));
+      }
+      offset = bodyOffset + knownSize(elementId, elementSize);
+    }
+    return end;
+  }
 
-    long value = firstByte;
-    for (int i = 1; i < length; i++) {
-      int nextByte = dis.readUnsignedByte();
-      value = (value << 8) | nextByte;
+  /**
+   * Reads the Cues the SeekHead points to into a {@link ClusterIndex}, or indexes the Clusters from
+   * {@code firstCluster} on when the Segment has no Cues.
+   */
+  private ClusterIndex readCues(long firstCluster) throws IOException {
+    cueTable = new ClusterIndex();
+    try {
+      if (cuesPosition >= 0) {
+        ByteBuffer buf = header(segmentStart + cuesPosition);
+        long elementId = readElementId(buf);
+        long elementSize = readElementSize(buf);
+        if (elementId == CUES) {
+          long bodyOffset = windowBase + buf.position();
+          parseElement(elementId, elementSize,
+              window(bodyOffset, knownSize(elementId, elementSize)));
+        }
+      }
+      if (cueTable.size() == 0) {
+        index = cueTable;
+        parseSegment(firstCluster, segmentSize == UNKNOWN_SIZE
+            ? UNKNOWN_SIZE : segmentStart + segmentSize - firstCluster);
+      }
+      cueTable.setTimestampScale(timestampScale);
+      return cueTable;
+    } finally {
+      index = null;
+      cueTable = null;
+    }
+  }
+
+  /**
+   * Decodes a file like {@link #decode(Path)}, with the Clusters parsed on {@code pool}. This
+   * thread walks the Segment by element headers only, hands runs of about {@link #RUN_SIZE} bytes
+   * of consecutive Clusters to the pool and replays their events to the handler in file order, so
+   * the handler sees exactly the sequence a sequential decode produces and is only ever called
+   * from this thread.
+   */
+  public void decodeParallel(Path path, ForkJoinPool pool) throws IOException {
+    this.pool = pool;
+    try {
+      decode(path);
+    } finally {
+      this.pool = null;
+      run = null;
+      for (ClusterRun pending : runs) {
+        pending.cancel(true);
+      }
+      runs.clear();
+    }
+  }
+
+  /**
+   * Decodes a run of Clusters cut out of a Segment body, see {@link ClusterRun}.
+   */
+  void decodeClusters(ByteBuffer buffer) throws IOException {
+    window = buffer.slice();
+    windowBase = 0;
+    inputLength = window.limit();
+    try {
+      parseSegment(0, inputLength);
+    } finally {
+      window = null;
+    }
+  }
+
+  private void decodeElements() throws IOException {
+    long offset = 0;
+    while (offset < inputLength) {
+      ByteBuffer buf = header(offset);
+      long elementId = readElementId(buf);
+      long size = readElementSize(buf);
+      long bodyOffset = windowBase + buf.position();
+
+      if (elementId == SEGMENT) {
+        startSegment(bodyOffset, size);
+        offset = parseSegment(bodyOffset, size);
+        continue;
+      }
+      if (elementId == EBML) {
+        parseEbmlHeader(window(bodyOffset, knownSize(elementId, size)), size);
+      }
+      offset = bodyOffset + knownSize(elementId, size);
     }
+  }
 
-    return new EBMLElement(length, value);
+  private void startSegment(long start, long size) {
+    segmentStart = start;
+    segmentSize = size;
+    timestampScale = 1000000;
+    videoTrack = 0;
+    cuesPosition = -1;
+    handler.onSegmentStart(size);
   }
 
-  private EBMLElement readElementSize(DataInputStream dis) throws IOException {
-    int firstByte = dis.readUnsignedByte();
-    int mask = 0x80;
-    int length = 1;
-    while ((firstByte & mask) == 0) {
-      mask >>= 1;
-      length++;
-      if (mask == 0) {
-        throw new IOException("Invalid EBML Size leading bits");
+  /**
+   * Returns the input positioned at {@code offset}, with the next element header available.
+   */
+  private ByteBuffer header(long offset) throws IOException {
+    return window(offset, Math.min(MAX_HEADER_SIZE, inputLength - offset));
+  }
+
+  /**
+   * Returns the input positioned at {@code offset} with at least {@code length} bytes readable.
+   * Reading a file maps a new window whenever the range is not inside the current one; reading a
+   * buffer only repositions it.
+   */
+  private ByteBuffer window(long offset, long length) throws IOException {
+    if (offset + length > inputLength) {
+      throw new EOFException("Truncated element at " + offset);
+    }
+    if (window == null || offset < windowBase || offset + length > windowBase + window.limit()) {
+      if (channel == null) {
+        throw new EOFException("Element at " + offset + " is outside the input");
       }
+      if (length > Integer.MAX_VALUE) {
+        throw new IOException("Element at " + offset + " too large to map: " + length);
+      }
+      long size = Math.min(Math.max(WINDOW_SIZE, length), inputLength - offset);
+      window = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+      windowBase = offset;
     }
+    window.position((int) (offset - windowBase));
+    return window;
+  }
 
+  /**
+   * Reads an element ID, keeping the VINT marker bit as IDs are defined with it.
+   */
+  static long readElementId(ByteBuffer buf) throws IOException {
+    int pos = buf.position();
+    int firstByte = buf.get() & 0xFF;
+    int length = vintLength(firstByte);
     if (length > 8) {
-      throw new IOException("EBML Size length too long");
+      throw new IOException("Invalid EBML ID leading bits");
     }
+    long value = readVintBytes(buf, pos, firstByte, length);
+    buf.position(pos + length);
+    return value;
+  }
 
-    long value = firstByte & (mask - 1);
+  /**
+   * Reads an element data size, returning {@link #UNKNOWN_SIZE} when all value bits are set.
+   */
+  static long readElementSize(ByteBuffer buf) throws IOException {
+    int start = buf.position();
+    long value = readVint(buf);
+    return value == (1L << (7 * (buf.position() - start))) - 1 ? UNKNOWN_SIZE : value;
+  }
 
-    for (int i = 1; i < length; i++) {
-      int nextByte = dis.readUnsignedByte();
-      value = (value << 8) | nextByte;
+  /**
+   * Reads an unsigned VINT with the marker bit removed.
+   */
+  static long readVint(ByteBuffer buf) throws IOException {
+    int pos = buf.position();
+    int firstByte = buf.get() & 0xFF;
+    int length = vintLength(firstByte);
+    if (length > 8) {
+      throw new IOException("Invalid EBML VINT leading bits");
     }
-
-    return new EBMLElement(length, value);
+    long value = readVintBytes(buf, pos, firstByte, length);
+    buf.position(pos + length);
+    return value & ((1L << (7 * length)) - 1);
   }
 
-  private void parseEbmlHeader(DataInputStream dis, long size) throws IOException {
-    long bytesRead = 0;
-    while (bytesRead < size) {
-      EBMLElement idElement = readElementId(dis);
-      EBMLElement sizeElement = readElementSize(dis);
+  /**
+   * Length of a VINT from its first byte: one plus the number of leading zero bits. Returns 9 for a
+   * zero byte, which is never valid.
+   */
+  static int vintLength(int firstByte) {
+    return Integer.numberOfLeadingZeros(firstByte) - 23;
+  }
 
-      long elementId = idElement.idOrSize;
-      long elementSize = sizeElement.idOrSize;
+  private static long readVintBytes(ByteBuffer buf, int pos, int firstByte, int length) {
+    if (length == 1) {
+      return firstByte;
+    }
+    if (buf.limit() - pos >= 8) {
+      // One bounds check for the whole VINT, then drop the bytes that follow it
+      return buf.getLong(pos) >>> (64 - 8 * length);
+    }
+    if (buf.limit() - pos < length) {
+      throw new BufferUnderflowException();
+    }
+    long value = firstByte;
+    for (int i = 1; i < length; i++) {
+      value = (value << 8) | (buf.get(pos + i) & 0xFF);
+    }
+    return value;
+  }
 
-      bytesRead += idElement.length + sizeElement.length + elementSize;
+  private void parseEbmlHeader(ByteBuffer buf, long size) throws IOException {
+    WebMHandler.EbmlHeader header = new WebMHandler.EbmlHeader();
+    int end = buf.position() + (int) size;
+    while (buf.position() < end) {
+      long elementId = readElementId(buf);
+      long elementSize = readElementSize(buf);
 
       switch ((int) elementId) {
         case EBML_VERSION:
-          int version = dis.readUnsignedByte();
-          System.out.println("EBML Version: " + version);
+          header.version = readUnsignedInt(buf, elementSize);
           break;
         case EBML_READ_VERSION:
-          int readVersion = dis.readUnsignedByte();
-          System.out.println("EBML Read Version: " + readVersion);
+          header.readVersion = readUnsignedInt(buf, elementSize);
           break;
         case EBML_MAX_ID_LENGTH:
-          int maxIdLength = dis.readUnsignedByte();
-          System.out.println("EBML Max ID Length: " + maxIdLength);
+          header.maxIdLength = readUnsignedInt(buf, elementSize);
           break;
         case EBML_MAX_SIZE_LENGTH:
-          int maxSizeLength = dis.readUnsignedByte();
-          System.out.println("EBML Max Size Length: " + maxSizeLength);
+          header.maxSizeLength = readUnsignedInt(buf, elementSize);
           break;
         case DOC_TYPE:
-          byte[] docTypeData = new byte[(int) elementSize];
-          dis.readFully(docTypeData);
-          System.out.println("Doc Type: " + new String(docTypeData, StandardCharsets.UTF_8));
+          header.docType = parseStringElement(buf, (int) elementSize);
           break;
         case DOC_TYPE_VERSION:
-          int docTypeVersion = dis.readUnsignedByte();
-          System.out.println("Doc Type Version: " + docTypeVersion);
+          header.docTypeVersion = readUnsignedInt(buf, elementSize);
           break;
         case DOC_TYPE_READ_VERSION:
-          int docTypeReadVersion = dis.readUnsignedByte();
-          System.out.println("Doc Type Read Version: " + docTypeReadVersion);
+          header.docTypeReadVersion = readUnsignedInt(buf, elementSize);
           break;
         case DOC_TYPE_EXTENSION:
-          System.out.println("Found DocType Extension");
-          parseDocTypeExtension(dis, elementSize);
+          parseDocTypeExtension(buf, elementSize, header);
           break;
         default:
-          System.out.println(
-              "Skipping unknown EBML Header element: " + Long.toHexString(elementId));
-          dis.skipBytes((int) elementSize);
+          skip(buf, elementSize);
           break;
       }
     }
+    handler.onEbmlHeader(header);
   }
 
-  private void parseDocTypeExtension(DataInputStream dis, long size) throws IOException {
-    long bytesRead = 0;
-    while (bytesRead < size) {
-      EBMLElement idElement = readElementId(dis);
-      EBMLElement sizeElement = readElementSize(dis);
-
-      long elementId = idElement.idOrSize;
-      long elementSize = sizeElement.idOrSize;
-
-      bytesRead += idElement.length + sizeElement.length + elementSize;
+  private void parseDocTypeExtension(ByteBuffer buf, long size,
+      WebMHandler.EbmlHeader header) throws IOException {
+    int end = buf.position() + (int) size;
+    while (buf.position() < end) {
+      long elementId = readElementId(buf);
+      long elementSize = readElementSize(buf);
 
       switch ((int) elementId) {
         case DOC_TYPE_EXTENSION_NAME:
-          String extensionName = parseStringElement(dis, (int) elementSize);
-          System.out.println("Doc Type Extension Name: " + extensionName);
+          header.docTypeExtensionName = parseStringElement(buf, (int) elementSize);
           break;
         case DOC_TYPE_EXTENSION_VERSION:
-          int extensionVersion = dis.readUnsignedByte();
-          System.out.println("Doc Type Extension Version: " + extensionVersion);
+          header.docTypeExtensionVersion = readUnsignedInt(buf, elementSize);
           break;
         default:
-          dis.skipBytes((int) elementSize);
+          skip(buf, elementSize);
           break;
       }
     }
   }
 
-  private String parseStringElement(DataInputStream dis, int size) throws IOException {
-    byte[] data = new byte[size];
-    dis.readFully(data);
+  private String parseStringElement(ByteBuffer buf, int size) throws IOException {
+    int start = buf.position();
 
     // Truncate the string at the first Null Octet (0x00)
     int validLength = 0;
-    while (validLength < data.length && data[validLength] != 0x00) {
+    while (validLength < size && buf.get(start + validLength) != 0x00) {
       validLength++;
     }
 
-    return new String(data, 0, validLength, StandardCharsets.UTF_8);
+    String value;
+    if (buf.hasArray()) {
+      value = new String(buf.array(), buf.arrayOffset() + start, validLength,
+          StandardCharsets.UTF_8);
+    } else {
+      byte[] data = new byte[validLength];
+      buf.get(data);
+      value = new String(data, StandardCharsets.UTF_8);
+    }
+    buf.position(start + size);
+    return value;
   }
 
-  private void parseSegment(DataInputStream dis, long size) throws IOException {
-    long remaining = size;
-    while (remaining > 0) {
-      EBMLElement idElement = readElementId(dis);
-      EBMLElement sizeElement = readElementSize(dis);
-
-      long elementId = idElement.idOrSize;
-      long elementSize = sizeElement.idOrSize;
+  private byte[] readBytes(ByteBuffer buf, long size) throws IOException {
+    byte[] data = new byte[(int) size];
+    buf.get(data);
+    return data;
+  }
 
-//            remaining -= idElement.length + sizeElement.length + elementSize;
+  /**
+   * Parses the children of a Segment and returns the offset after it. An unknown-size Segment runs
+   * to the end of the input or until the next EBML header or Segment.
+   */
+  private long parseSegment(long start, long size) throws IOException {
+    boolean unknownSize = size == UNKNOWN_SIZE;
+    long end = unknownSize ? inputLength : Math.min(start + size, inputLength);
+    long offset = start;
+    while (offset < end) {
+      ByteBuffer buf = header(offset);
+      long elementId = readElementId(buf);
+      long elementSize = readElementSize(buf);
+      long bodyOffset = windowBase + buf.position();
+
+      if (unknownSize && (elementId == EBML || elementId == SEGMENT)) {
+        replayClusters();
+        return offset;
+      }
 
       switch ((int) elementId) {
-        case SEEK_HEAD:
-          System.out.println("Found SeekHead");
-          parseSeekHead(dis, elementSize);
-          break;
+        case CLUSTER:
+          if (index != null) {
+            offset = indexCluster(offset, bodyOffset, elementSize);
+          } else if (pool != null) {
+            offset = scheduleCluster(offset, bodyOffset, elementSize);
+          } else {
+            offset = parseCluster(bodyOffset, elementSize);
+          }
+          continue;
         case INFO:
-          System.out.println("Found Info");
-          parseSegmentInfo(dis, elementSize);
-          break;
         case TRACKS:
-          System.out.println("Found Tracks");
-          parseTracks(dis, elementSize);
+          replayClusters();
+          parseElement(elementId, elementSize,
+              window(bodyOffset, knownSize(elementId, elementSize)));
           break;
+        case SEEK_HEAD:
         case CHAPTERS:
-          System.out.println("Found Chapters");
-          parseChapters(dis, elementSize);
-          break;
-        case CLUSTER:
-          System.out.println("Found Cluster");
-          parseCluster(dis, elementSize);
-          break;
         case CUES:
-          System.out.println("Found Cues");
-          parseCues(dis, elementSize);
-          break;
         case ATTACHMENTS:
-          System.out.println("Found Attachments");
-          parseAttachments(dis, elementSize);
-          break;
         case TAGS:
-          System.out.println("Found Tags");
-          parseTags(dis, elementSize);
-          break;
-        case CRC_32:
-          byte[] crcData = new byte[(int) elementSize];
-          dis.readFully(crcData);
-          System.out.println("Segment CRC-32 (hex): " + bytesToHex(crcData));
-          break;
-        case VOID:
-          dis.skipBytes((int) elementSize);
-          System.out.println("Skipped Void in Segment");
+          if (index == null) {
+            replayClusters();
+            parseElement(elementId, elementSize,
+                window(bodyOffset, knownSize(elementId, elementSize)));
+          }
           break;
         default:
-          System.out.println("Unknown element in Segment: " + Long.toHexString(elementId));
-          dis.skipBytes((int) elementSize);
+          // CRC-32, Void and unknown elements are jumped over without being read
           break;
       }
+      offset = bodyOffset + knownSize(elementId, elementSize);
+    }
+    replayClusters();
+    return offset;
+  }
+
+  /**
+   * Adds the Cluster to the current {@link ClusterRun}, forking the run once it is large enough,
+   * and returns the offset after the Cluster. When too many runs are in flight the oldest is
+   * replayed first, which bounds the memory held by recorded events.
+   */
+  private long scheduleCluster(long clusterOffset, long start, long size) throws IOException {
+    long end = size == UNKNOWN_SIZE ? clusterEnd(start) : Math.min(start + size, inputLength);
+    if (run == null) {
+      run = new ClusterRun(channel, clusterOffset, end);
+    } else {
+      run.end = end;
+    }
+    if (run.end - run.start >= RUN_SIZE) {
+      pool.execute(run);
+      runs.add(run);
+      run = null;
+      if (runs.size() > 2 * pool.getParallelism()) {
+        runs.poll().replay(handler);
+      }
+    }
+    return end;
+  }
+
+  /**
+   * Forks the current run and replays every pending run, so that whatever follows is delivered
+   * after the Clusters before it.
+   */
+  private void replayClusters() throws IOException {
+    if (pool == null) {
+      return;
+    }
+    if (run != null) {
+      pool.execute(run);
+      runs.add(run);
+      run = null;
+    }
+    while (!runs.isEmpty()) {
+      runs.poll().replay(handler);
+    }
+  }
+
+  /**
+   * Finds the end of an unknown-size Cluster by reading its child headers.
+   */
+  private long clusterEnd(long start) throws IOException {
+    long offset = start;
+    while (offset < inputLength) {
+      ByteBuffer buf = header(offset);
+      long elementId = readElementId(buf);
+      long elementSize = readElementSize(buf);
+      if (endsCluster(elementId)) {
+        break;
+      }
+      offset = windowBase + buf.position() + knownSize(elementId, elementSize);
     }
+    return offset;
   }
 
-  private void parseSeekHead(DataInputStream dis, long size) throws IOException {
-    long bytesRead = 0;
-    while (bytesRead < size) {
-      EBMLElement idElement = readElementId(dis);
-      EBMLElement sizeElement = readElementSize(dis);
+  /**
+   * Parses the body of a single element whose header has already been consumed. Used for the
+   * children of a Segment and by {@link WebMStreamParser} once an element has been fully received.
+   */
+  void parseElement(long elementId, long elementSize, ByteBuffer buf) throws IOException {
+    try {
+      parseBody(elementId, elementSize, buf);
+    } catch (BufferUnderflowException e) {
+      throw new EOFException(
+          "Element " + Long.toHexString(elementId) + " ends before its children");
+    }
+  }
 
-      long elementId = idElement.idOrSize;
-      long elementSize = sizeElement.idOrSize;
+  private void parseBody(long elementId, long elementSize, ByteBuffer buf) throws IOException {
+    switch ((int) elementId) {
+      case EBML:
+        parseEbmlHeader(buf, elementSize);
+        break;
+      case SEEK_HEAD:
+        parseSeekHead(buf, elementSize);
+        break;
+      case INFO:
+        parseSegmentInfo(buf, elementSize);
+        break;
+      case TRACKS:
+        parseTracks(buf, elementSize);
+        break;
+      case CHAPTERS:
+        parseChapters(buf, elementSize);
+        break;
+      case CUES:
+        parseCues(buf, elementSize);
+        break;
+      case ATTACHMENTS:
+        parseAttachments(buf, elementSize);
+        break;
+      case TAGS:
+        parseTags(buf, elementSize);
+        break;
+      case TIMESTAMP:
+        handler.onClusterStart(readUnsignedInt(buf, elementSize));
+        break;
+      case SIMPLE_BLOCK:
+        parseSimpleBlock(buf, elementSize);
+        break;
+      case BLOCK_GROUP:
+        parseBlockGroup(buf, elementSize);
+        break;
+      default:
+        // CRC-32, Void and unknown elements
+        skip(buf, elementSize);
+        break;
+    }
+  }
 
-      bytesRead += idElement.length + sizeElement.length + elementSize;
+  private void parseSeekHead(ByteBuffer buf, long size) throws IOException {
+    int end = buf.position() + (int) size;
+    while (buf.position() < end) {
+      long elementId = readElementId(buf);
+      long elementSize = readElementSize(buf);
 
       if (elementId == SEEK) {
-        parseSeek(dis, elementSize);
+        parseSeek(buf, elementSize);
       } else {
-        System.out.println("Unknown element in SeekHead: " + Long.toHexString(elementId));
-        dis.skipBytes((int) elementSize);
+        skip(buf, elementSize);
       }
     }
   }
 
-  private void parseSeek(DataInputStream dis, long size) throws IOException {
-    long bytesRead = 0;
-    while (bytesRead < size) {
-      EBMLElement idElement = readElementId(dis);
-      EBMLElement sizeElement = readElementSize(dis);
-
-      long elementId = idElement.idOrSize;
-      long elementSize = sizeElement.idOrSize;
-
-      bytesRead += idElement.length + sizeElement.length + elementSize;
+  private void parseSeek(ByteBuffer buf, long size) throws IOException {
+    long seekId = 0;
+    long seekPosition = 0;
+    int end = buf.position() + (int) size;
+    while (buf.position() < end) {
+      long elementId = readElementId(buf);
+      long elementSize = readElementSize(buf);
 
       if (elementId == SEEK_ID) {
-        byte[] idData = new byte[(int) elementSize];
-        dis.readFully(idData);
-        System.out.println("SeekID: " + bytesToHex(idData));
+        seekId = readUnsignedInt(buf, elementSize);
       } else if (elementId == SEEK_POSITION) {
-        long position = readUnsignedInt(dis, elementSize);
-        System.out.println("SeekPosition: " + position);
+        seekPosition = readUnsignedInt(buf, elementSize);
       } else {
-        System.out.println("Unknown element in Seek: " + Long.toHexString(elementId));
-        dis.skipBytes((int) elementSize);
+        skip(buf, elementSize);
       }
     }
+    if (seekId == CUES) {
+      cuesPosition = seekPosition;
+    }
+    handler.onSeek(seekId, seekPosition);
   }
 
-  private void parseCluster(DataInputStream dis, long size) throws IOException {
-    long remaining = size;
-    while (remaining > 0) {
-      EBMLElement idElement = readElementId(dis);
-      EBMLElement sizeElement = readElementSize(dis);
+  /**
+   * Parses the children of a Cluster and returns the offset after it. An unknown-size Cluster ends
+   * where the next Cluster, another level 1 element or a new Segment starts.
+   */
+  private long parseCluster(long start, long size) throws IOException {
+    boolean unknownSize = size == UNKNOWN_SIZE;
+    long end = unknownSize ? inputLength : Math.min(start + size, inputLength);
+    long offset = start;
+    while (offset < end) {
+      ByteBuffer buf = header(offset);
+      long elementId = readElementId(buf);
+      long elementSize = readElementSize(buf);
+      long bodyOffset = windowBase + buf.position();
+
+      if (unknownSize && endsCluster(elementId)) {
+        return offset;
+      }
 
-      long elementId = idElement.idOrSize;
-      long elementSize = sizeElement.idOrSize;
+      if (elementId == TIMESTAMP || elementId == SIMPLE_BLOCK || elementId == BLOCK_GROUP) {
+        parseElement(elementId, elementSize,
+            window(bodyOffset, knownSize(elementId, elementSize)));
+      }
+      offset = bodyOffset + knownSize(elementId, elementSize);
+    }
+    return offset;
+  }
 
-      remaining -= idElement.length + sizeElement.length + elementSize;
+  /**
+   * Index-only counterpart of {@link #parseCluster}: adds the Cluster to {@link #index} and returns
+   * the offset after it. A sized Cluster is left as soon as its Timestamp and first video block
+   * have been seen; an unknown-size one needs every child header read to find its end.
+   */
+  private long indexCluster(long clusterOffset, long start, long size) throws IOException {
+    boolean unknownSize = size == UNKNOWN_SIZE;
+    long end = unknownSize ? inputLength : Math.min(start + size, inputLength);
+    boolean timecodeFound = false;
+    long timecode = 0;
+    int flags = -1;
+    long offset = start;
+    while (offset < end) {
+      if (!unknownSize && timecodeFound && flags >= 0) {
+        offset = end;
+        break;
+      }
+      ByteBuffer buf = header(offset);
+      long elementId = readElementId(buf);
+      long elementSize = readElementSize(buf);
+      long bodyOffset = windowBase + buf.position();
+
+      if (unknownSize && endsCluster(elementId)) {
+        break;
+      }
 
       if (elementId == TIMESTAMP) {
-        long timecode = readUnsignedInt(dis, elementSize);
-        System.out.println("Cluster Timecode: " + timecode);
-      } else if (elementId == SIMPLE_BLOCK) {
-        parseSimpleBlock(dis, elementSize);
-      } else if (elementId == BLOCK_GROUP) {
-        parseBlockGroup(dis, elementSize);
-      } else if (elementId == CLUSTER) {
-        System.out.println("Found Cluster");
-        remaining = elementSize;
-//                dis.skipBytes((int) elementSize);
-      } else {
-        System.out.println("Skipping:" + elementSize + " " + Long.toHexString(elementId));
-        dis.skipBytes((int) elementSize);
+        timecode = readUnsignedInt(window(bodyOffset, elementSize), elementSize);
+        timecodeFound = true;
+      } else if (flags < 0 && elementId == SIMPLE_BLOCK) {
+        flags = blockFlags(header(bodyOffset));
+      } else if (flags < 0 && elementId == BLOCK_GROUP) {
+        flags = blockGroupFlags(window(bodyOffset, knownSize(elementId, elementSize)), elementSize);
+      }
+      offset = bodyOffset + knownSize(elementId, elementSize);
+    }
+    index.add(clusterOffset, timecode, Math.max(flags, 0));
+    return offset;
+  }
+
+  /**
+   * Flags of the block whose header starts at the buffer position, or -1 if it is not on the video
+   * track. Without a video track every block counts.
+   */
+  private int blockFlags(ByteBuffer buf) throws IOException {
+    long trackNumber = readVint(buf);
+    if (videoTrack != 0 && trackNumber != videoTrack) {
+      return -1;
+    }
+    return buf.get(buf.position() + 2) & 0xFF;
+  }
+
+  /**
+   * Flags of the Block in a BlockGroup. Blocks have no keyframe bit; a Block is a keyframe when the
+   * group has no ReferenceBlock.
+   */
+  private int blockGroupFlags(ByteBuffer buf, long size) throws IOException {
+    int end = buf.position() + (int) size;
+    int flags = -1;
+    boolean referenced = false;
+    while (buf.position() < end) {
+      long elementId = readElementId(buf);
+      long elementSize = readElementSize(buf);
+      int childEnd = buf.position() + (int) elementSize;
+
+      if (elementId == BLOCK) {
+        flags = blockFlags(buf);
+      } else if (elementId == REFERENCE_BLOCK) {
+        referenced = true;
       }
+      buf.position(childEnd);
     }
+    if (flags < 0) {
+      return -1;
+    }
+    return referenced ? flags & ~WebMHandler.KEYFRAME : flags | WebMHandler.KEYFRAME;
+  }
+
+  /**
+   * Whether {@code id} is a sibling or parent-level element, which terminates an unknown-size
+   * Cluster.
+   */
+  static boolean endsCluster(long id) {
+    return isTopLevel(id) || id == EBML || id == SEGMENT;
+  }
+
+  /**
+   * Whether {@code id} is a level 1 element, a direct child of the Segment.
+   */
+  static boolean isTopLevel(long id) {
+    switch ((int) id) {
+      case SEEK_HEAD:
+      case INFO:
+      case TRACKS:
+      case CHAPTERS:
+      case CLUSTER:
+      case CUES:
+      case ATTACHMENTS:
+      case TAGS:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private static long knownSize(long elementId, long size) throws IOException {
+    if (size == UNKNOWN_SIZE) {
+      throw new IOException("Unknown size not allowed for element " + Long.toHexString(elementId));
+    }
+    return size;
   }
 
-  private void parseSimpleBlock(DataInputStream dis, long size) throws IOException {
-    long startPos = dis.available();
+  private void parseSimpleBlock(ByteBuffer buf, long size) throws IOException {
+    int blockEnd = buf.position() + (int) size;
 
     // Read Track Number (EBML VINT)
-    EBMLElement trackNumberElement = readElementId(dis);
-    long trackNumber = trackNumberElement.idOrSize;
-    System.out.println("Track Number: " + trackNumber);
+    long trackNumber = readVint(buf);
 
     // Read Timestamp (relative to Cluster timestamp, signed int16)
-    short timestamp = dis.readShort();
-    System.out.println("Relative Timestamp: " + timestamp);
+    short timestamp = buf.getShort();
 
     // Read Flags (1 byte)
-    int flags = dis.readUnsignedByte();
-
-    boolean keyframe = (flags & 0x80) != 0;
-    boolean invisible = (flags & 0x08) != 0;
-    int lacing = (flags & 0x06) >> 1;
-    boolean discardable = (flags & 0x01) != 0;
-
-    System.out.println("Flags:");
-    System.out.println("  Keyframe: " + keyframe);
-    System.out.println("  Invisible: " + invisible);
-    System.out.println("  Lacing: " + lacing);
-//        System.out.println("    0 - No lacing");
-//        System.out.println("    1 - Xiph lacing");
-//        System.out.println("    2 - Fixed-size lacing");
-//        System.out.println("    3 - EBML lacing");
-    System.out.println("  Discardable: " + discardable);
-
-    // Calculate the remaining size after header
-    int headerSize = trackNumberElement.length + 2
-        + 1; // TrackNumber length + timestamp (2 bytes) + flags (1 byte)
-    long dataSize = size - headerSize;
+    int flags = (buf.get() & 0xFF);
+    int lacing = (flags & WebMHandler.LACING) >> 1;
 
     if (lacing == 0) {
-      // No lacing, read single frame
-      byte[] frameData = new byte[(int) dataSize];
-      dis.readFully(frameData);
-      System.out.println("Read single frame of size: " + frameData.length);
-      // Process frameData as needed
+      // No lacing, single frame
+      onFrame(buf, trackNumber, timestamp, flags, buf.position(), blockEnd);
     } else {
       // Lacing is used
-      int numFrames = dis.readUnsignedByte() + 1;
-      System.out.println("Number of frames: " + numFrames);
+      int numFrames = (buf.get() & 0xFF) + 1;
 
-      int[] frameSizes = new int[numFrames];
+      int[] frameSizes = laceSizes;
       switch (lacing) {
         case 1:
           // Xiph lacing
@@ -619,45 +1123,30 @@ public class WebMDecoder {
             int size2 = 0;
             int readByte;
             do {
-              readByte = dis.readUnsignedByte();
+              readByte = (buf.get() & 0xFF);
               size2 += readByte;
             } while (readByte == 255);
             frameSizes[i] = size2;
           }
-          // Size of last frame is remaining data
-          long bytesRead = 1; // For numFrames byte
-          for (int i = 0; i < numFrames - 1; i++) {
-            bytesRead += frameSizes[i];
-          }
-          frameSizes[numFrames - 1] = (int) (dataSize - bytesRead);
           break;
 
         case 3:
           // EBML lacing
           // Read size of first frame
-          EBMLElement frameSizeElement = readElementSize(dis);
-          frameSizes[0] = (int) frameSizeElement.idOrSize;
+          frameSizes[0] = (int) readVint(buf);
           int previousSize = frameSizes[0];
           for (int i = 1; i < numFrames - 1; i++) {
             // Read difference from previous size
-            int sizeDiff = (int) readSignedEBML(dis);
+            int sizeDiff = (int) readSignedEBML(buf);
             frameSizes[i] = previousSize + sizeDiff;
             previousSize = frameSizes[i];
           }
-          // Size of last frame is remaining data
-          long totalSizes = frameSizeElement.length + frameSizes[0];
-          for (int i = 1; i < numFrames - 1; i++) {
-            totalSizes += frameSizes[i];
-          }
-          frameSizes[numFrames - 1] = (int) (dataSize - totalSizes);
           break;
 
         case 2:
           // Fixed-size lacing
-          // Calculate size of each frame
-          int totalFrameDataSize = (int) (dataSize - 1); // Subtract the numFrames byte
-          int frameSize = totalFrameDataSize / numFrames;
-          for (int i = 0; i < numFrames; i++) {
+          int frameSize = (blockEnd - buf.position()) / numFrames;
+          for (int i = 0; i < numFrames - 1; i++) {
             frameSizes[i] = frameSize;
           }
           break;
@@ -666,1201 +1155,898 @@ public class WebMDecoder {
           throw new IOException("Unsupported lacing type: " + lacing);
       }
 
-      // Read frames
-      for (int i = 0; i < numFrames; i++) {
-        byte[] frameData = new byte[frameSizes[i]];
-        dis.readFully(frameData);
-        System.out.println("Read frame " + (i + 1) + " of size: " + frameSizes[i]);
-        // Process frameData as needed
+      // Frames follow the lace header back to back, the last one takes the rest of the block
+      int frameStart = buf.position();
+      for (int i = 0; i < numFrames - 1; i++) {
+        int frameEnd = frameStart + frameSizes[i];
+        if (frameEnd > blockEnd) {
+          throw new IOException("Laced frame exceeds SimpleBlock size");
+        }
+        onFrame(buf, trackNumber, timestamp, flags, frameStart, frameEnd);
+        frameStart = frameEnd;
       }
+      onFrame(buf, trackNumber, timestamp, flags, frameStart, blockEnd);
     }
 
-    long endPos = dis.available();
-    long bytesConsumed = startPos - endPos;
-    if (bytesConsumed != size) {
-      System.out.println(
-          "Warning: SimpleBlock parsed size mismatch. Expected: " + size + ", Consumed: "
-              + bytesConsumed);
-      dis.skipBytes((int) (size - bytesConsumed)); // Skip remaining bytes if any
-    }
+    buf.position(blockEnd);
   }
 
-  private long readSignedEBML(DataInputStream dis) throws IOException {
-    int firstByte = dis.readUnsignedByte();
-    int mask = 0x80;
-    int length = 1;
-    while ((firstByte & mask) == 0) {
-      mask >>= 1;
-      length++;
-      if (mask == 0) {
-        throw new IOException("Invalid EBML VINT leading bits");
-      }
-    }
-
-    long value = firstByte & (mask - 1);
-    for (int i = 1; i < length; i++) {
-      int nextByte = dis.readUnsignedByte();
-      value = (value << 8) | nextByte;
+  /**
+   * Hands one frame to the handler as a view over {@code buf}. The view is reused for every frame
+   * decoded from the same buffer, so handlers must copy the payload if they keep it.
+   */
+  private void onFrame(ByteBuffer buf, long trackNumber, short timestamp, int flags,
+      int frameStart, int frameEnd) {
+    if (payloadSource != buf) {
+      payloadSource = buf;
+      payload = buf.duplicate();
     }
+    payload.clear();
+    payload.position(frameStart).limit(frameEnd);
+    handler.onSimpleBlock(trackNumber, timestamp, flags, payload);
+  }
 
-    // Convert to signed integer
-    long maxValue = (1L << (7 * length)) - 1;
-    long signedValue = value - ((maxValue + 1) / 2);
+  private long readSignedEBML(ByteBuffer buf) throws IOException {
+    int start = buf.position();
+    long value = readVint(buf);
+    int length = buf.position() - start;
 
-    return signedValue;
+    // Convert to signed integer by subtracting the bias (2^(7n-1) - 1)
+    return value - ((1L << (7 * length - 1)) - 1);
   }
 
-  private void parseBlockGroup(DataInputStream dis, long size) throws IOException {
-    long bytesRead = 0;
-    while (bytesRead < size) {
-      EBMLElement idElement = readElementId(dis);
-      EBMLElement sizeElement = readElementSize(dis);
-
-      long elementId = idElement.idOrSize;
-      long elementSize = sizeElement.idOrSize;
 
-      bytesRead += idElement.length + sizeElement.length + elementSize;
+  private void parseBlockGroup(ByteBuffer buf, long size) throws IOException {
+    int end = buf.position() + (int) size;
+    while (buf.position() < end) {
+      long elementId = readElementId(buf);
+      long elementSize = readElementSize(buf);
 
       // Handle BlockGroup child elements
-      dis.skipBytes((int) elementSize);
+      skip(buf, elementSize);
     }
   }
 
-  private void parseSegmentInfo(DataInputStream dis, long size) throws IOException {
-    long bytesRead = 0;
-    while (bytesRead < size) {
-      EBMLElement idElement = readElementId(dis);
-      EBMLElement sizeElement = readElementSize(dis);
-
-      long elementId = idElement.idOrSize;
-      long elementSize = sizeElement.idOrSize;
-
-      bytesRead += idElement.length + sizeElement.length + elementSize;
+  private void parseSegmentInfo(ByteBuffer buf, long size) throws IOException {
+    WebMHandler.SegmentInfo info = new WebMHandler.SegmentInfo();
+    int end = buf.position() + (int) size;
+    while (buf.position() < end) {
+      long elementId = readElementId(buf);
+      long elementSize = readElementSize(buf);
 
       switch ((int) elementId) {
         case SEGMENT_UUID:
-          byte[] uuidData = new byte[(int) elementSize];
-          dis.readFully(uuidData);
-          System.out.println("Segment UUID: " + bytesToHex(uuidData));
+          info.segmentUuid = readBytes(buf, elementSize);
           break;
         case SEGMENT_FILENAME:
-          String segmentFilename = parseStringElement(dis, (int) elementSize);
-          System.out.println("Segment Filename: " + segmentFilename);
+          info.segmentFilename = parseStringElement(buf, (int) elementSize);
           break;
         case PREV_UUID:
-          byte[] prevUuidData = new byte[(int) elementSize];
-          dis.readFully(prevUuidData);
-          System.out.println("Previous Segment UUID: " + bytesToHex(prevUuidData));
+          info.prevUuid = readBytes(buf, elementSize);
           break;
         case PREV_FILENAME:
-          String prevFilename = parseStringElement(dis, (int) elementSize);
-          System.out.println("Previous Segment Filename: " + prevFilename);
+          info.prevFilename = parseStringElement(buf, (int) elementSize);
           break;
         case NEXT_UUID:
-          byte[] nextUuidData = new byte[(int) elementSize];
-          dis.readFully(nextUuidData);
-          System.out.println("Next Segment UUID: " + bytesToHex(nextUuidData));
+          info.nextUuid = readBytes(buf, elementSize);
           break;
         case NEXT_FILENAME:
-          String nextFilename = parseStringElement(dis, (int) elementSize);
-          System.out.println("Next Segment Filename: " + nextFilename);
+          info.nextFilename = parseStringElement(buf, (int) elementSize);
           break;
         case SEGMENT_FAMILY:
-          byte[] segmentFamilyData = new byte[(int) elementSize];
-          dis.readFully(segmentFamilyData);
-          System.out.println("Segment Family: " + bytesToHex(segmentFamilyData));
+          info.segmentFamily = readBytes(buf, elementSize);
           break;
         case CHAPTER_TRANSLATE:
-          System.out.println("Found Chapter Translate");
-          parseChapterTranslate(dis, elementSize);
+          parseChapterTranslate(buf, elementSize);
           break;
         case TIMESTAMP_SCALE:
-          long scale = readUnsignedInt(dis, elementSize);
-          System.out.println("Timestamp Scale: " + scale);
+          info.timestampScale = readUnsignedInt(buf, elementSize);
           break;
         case DURATION:
-          double duration = readFloat(dis, elementSize);
-          System.out.println("Duration: " + duration);
+          info.duration = readFloat(buf, elementSize);
           break;
         case DATE_UTC:
-          long dateUtc = readDate(dis, elementSize);
-          System.out.println("Date UTC: " + new java.util.Date(dateUtc));
+          info.dateUtc = readDate(buf, elementSize);
           break;
         case TITLE:
-          String title = parseStringElement(dis, (int) elementSize);
-          System.out.println("Title: " + title);
+          info.title = parseStringElement(buf, (int) elementSize);
           break;
         case MUXING_APP:
-          String muxingApp = parseStringElement(dis, (int) elementSize);
-          System.out.println("Muxing App: " + muxingApp);
+          info.muxingApp = parseStringElement(buf, (int) elementSize);
           break;
         case WRITING_APP:
-          String writingApp = parseStringElement(dis, (int) elementSize);
-          System.out.println("Writing App: " + writingApp);
+          info.writingApp = parseStringElement(buf, (int) elementSize);
           break;
         default:
-          System.out.println("Unknown element in Info: " + Long.toHexString(elementId));
-          dis.skipBytes((int) elementSize);
+          skip(buf, elementSize);
           break;
       }
     }
+    timestampScale = info.timestampScale;
+    handler.onSegmentInfo(info);
   }
 
-  private void parseChapterTranslate(DataInputStream dis, long size) throws IOException {
+  private void parseChapterTranslate(ByteBuffer buf, long size) throws IOException {
     // Implement parsing of ChapterTranslate child elements as needed
-    dis.skipBytes((int) size); // Placeholder
+    skip(buf, size); // Placeholder
   }
 
-  private long readDate(DataInputStream dis, long size) throws IOException {
+  private long readDate(ByteBuffer buf, long size) throws IOException {
     if (size != 8) {
       throw new IOException("Invalid date size: " + size);
     }
-    long date = dis.readLong();
+    long date = buf.getLong();
     // Convert from nanoseconds since 2001-01-01T00:00:00 UTC to milliseconds since 1970-01-01T00:00:00 UTC
     long dateUtc = date / 1000000L + 978307200000L;
     return dateUtc;
   }
 
-  private void parseTracks(DataInputStream dis, long size) throws IOException {
-    long bytesRead = 0;
-    while (bytesRead < size) {
-      EBMLElement idElement = readElementId(dis);
-      EBMLElement sizeElement = readElementSize(dis);
-
-      long elementId = idElement.idOrSize;
-      long elementSize = sizeElement.idOrSize;
-
-      bytesRead += idElement.length + sizeElement.length + elementSize;
+  private void parseTracks(ByteBuffer buf, long size) throws IOException {
+    int end = buf.position() + (int) size;
+    while (buf.position() < end) {
+      long elementId = readElementId(buf);
+      long elementSize = readElementSize(buf);
 
       if (elementId == TRACK_ENTRY) {
-        System.out.println("Found Track Entry");
-        parseTrackEntry(dis, elementSize);
+        parseTrackEntry(buf, elementSize);
       } else {
-        dis.skipBytes((int) elementSize);
+        skip(buf, elementSize);
       }
     }
   }
 
-  private void parseTrackEntry(DataInputStream dis, long size) throws IOException {
-    long bytesRead = 0;
-    while (bytesRead < size) {
-      EBMLElement idElement = readElementId(dis);
-      EBMLElement sizeElement = readElementSize(dis);
-
-      long elementId = idElement.idOrSize;
-      long elementSize = sizeElement.idOrSize;
-
-      bytesRead += idElement.length + sizeElement.length + elementSize;
+  private void parseTrackEntry(ByteBuffer buf, long size) throws IOException {
+    WebMHandler.TrackEntry track = new WebMHandler.TrackEntry();
+    int end = buf.position() + (int) size;
+    while (buf.position() < end) {
+      long elementId = readElementId(buf);
+      long elementSize = readElementSize(buf);
 
       switch ((int) elementId) {
         case TRACK_NUMBER:
-          long trackNumber = readUnsignedInt(dis, elementSize);
-          System.out.println("Track Number: " + trackNumber);
+          track.trackNumber = readUnsignedInt(buf, elementSize);
           break;
         case TRACK_UID:
-          long trackUID = readUnsignedInt(dis, elementSize);
-          System.out.println("Track UID: " + trackUID);
+          track.trackUid = readUnsignedInt(buf, elementSize);
           break;
         case TRACK_TYPE:
-          int trackType = dis.readUnsignedByte();
-          System.out.println("Track Type: " + trackType);
-//                    System.out.println("    1 - video");
-//                    System.out.println("    2 - audio");
-//                    System.out.println("    3 - complex");
-//                    System.out.println("    16 - logo");
-//                    System.out.println("    17 - subtitle");
-//                    System.out.println("    18 - buttons");
-//                    System.out.println("    32 - control");
-//                    System.out.println("    33 - metadata");
+          track.trackType = (int) readUnsignedInt(buf, elementSize);
           break;
         case FLAG_ENABLED:
-          int flagEnabled = dis.readUnsignedByte();
-          System.out.println("Flag Enabled: " + flagEnabled);
+          track.enabled = readUnsignedInt(buf, elementSize) != 0;
           break;
         case FLAG_DEFAULT:
-          int flagDefault = dis.readUnsignedByte();
-          System.out.println("Flag Default: " + flagDefault);
+          track.isDefault = readUnsignedInt(buf, elementSize) != 0;
           break;
         case FLAG_FORCED:
-          int flagForced = dis.readUnsignedByte();
-          System.out.println("Flag Forced: " + flagForced);
+          track.forced = readUnsignedInt(buf, elementSize) != 0;
           break;
         case FLAG_HEARING_IMPAIRED:
-          int flagHearingImpaired = dis.readUnsignedByte();
-          System.out.println("Flag Hearing Impaired: " + flagHearingImpaired);
+          track.hearingImpaired = readUnsignedInt(buf, elementSize) != 0;
           break;
         case FLAG_VISUAL_IMPAIRED:
-          int flagVisualImpaired = dis.readUnsignedByte();
-          System.out.println("Flag Visual Impaired: " + flagVisualImpaired);
+          track.visualImpaired = readUnsignedInt(buf, elementSize) != 0;
           break;
         case FLAG_TEXT_DESCRIPTIONS:
-          int flagTextDescriptions = dis.readUnsignedByte();
-          System.out.println("Flag Text Descriptions: " + flagTextDescriptions);
+          track.textDescriptions = readUnsignedInt(buf, elementSize) != 0;
           break;
         case FLAG_ORIGINAL:
-          int flagOriginal = dis.readUnsignedByte();
-          System.out.println("Flag Original: " + flagOriginal);
+          track.original = readUnsignedInt(buf, elementSize) != 0;
           break;
         case FLAG_COMMENTARY:
-          int flagCommentary = dis.readUnsignedByte();
-          System.out.println("Flag Commentary: " + flagCommentary);
+          track.commentary = readUnsignedInt(buf, elementSize) != 0;
           break;
         case FLAG_LACING:
-          int flagLacing = dis.readUnsignedByte();
-          System.out.println("Flag Lacing: " + flagLacing);
+          track.lacing = readUnsignedInt(buf, elementSize) != 0;
           break;
         case MIN_CACHE:
-          long minCache = readUnsignedInt(dis, elementSize);
-          System.out.println("Min Cache: " + minCache);
+          track.minCache = readUnsignedInt(buf, elementSize);
           break;
         case MAX_CACHE:
-          long maxCache = readUnsignedInt(dis, elementSize);
-          System.out.println("Max Cache: " + maxCache);
+          track.maxCache = readUnsignedInt(buf, elementSize);
           break;
         case DEFAULT_DURATION:
-          long defaultDuration = readUnsignedInt(dis, elementSize);
-          System.out.println("Default Duration: " + defaultDuration);
+          track.defaultDuration = readUnsignedInt(buf, elementSize);
           break;
         case DEFAULT_DECODED_FIELD_DURATION:
-          long defaultDecodedFieldDuration = readUnsignedInt(dis, elementSize);
-          System.out.println("Default Decoded Field Duration: " + defaultDecodedFieldDuration);
+          track.defaultDecodedFieldDuration = readUnsignedInt(buf, elementSize);
           break;
         case TRACK_TIMESTAMP_SCALE:
-          double trackTimestampScale = readFloat(dis, elementSize);
-          System.out.println("Track Timestamp Scale: " + trackTimestampScale);
+          track.trackTimestampScale = readFloat(buf, elementSize);
           break;
         case TRACK_OFFSET:
-          long trackOffset = readSignedInt(dis, elementSize);
-          System.out.println("Track Offset: " + trackOffset);
+          track.trackOffset = readSignedInt(buf, elementSize);
           break;
         case MAX_BLOCK_ADDITION_ID:
-          long maxBlockAdditionID = readUnsignedInt(dis, elementSize);
-          System.out.println("Max Block Addition ID: " + maxBlockAdditionID);
+          track.maxBlockAdditionId = readUnsignedInt(buf, elementSize);
           break;
         case BLOCK_ADDITION_MAPPING:
-          System.out.println("Found Block Addition Mapping");
-          parseBlockAdditionMapping(dis, elementSize);
+          parseBlockAdditionMapping(buf, elementSize, track);
           break;
         case NAME:
-          String name = parseStringElement(dis, (int) elementSize);
-          System.out.println("Name: " + name);
+          track.name = parseStringElement(buf, (int) elementSize);
           break;
         case LANGUAGE:
-          String language = parseStringElement(dis, (int) elementSize);
-          System.out.println("Language: " + language);
+          track.language = parseStringElement(buf, (int) elementSize);
           break;
         case LANGUAGE_BCP47:
-          String languageBCP47 = parseStringElement(dis, (int) elementSize);
-          System.out.println("Language BCP47: " + languageBCP47);
+          track.languageBcp47 = parseStringElement(buf, (int) elementSize);
           break;
         case CODEC_ID:
-          String codecID = parseStringElement(dis, (int) elementSize);
-          System.out.println("Codec ID: " + codecID);
+          track.codecId = parseStringElement(buf, (int) elementSize);
           break;
         case CODEC_PRIVATE:
-          byte[] codecPrivateData = new byte[(int) elementSize];
-          dis.readFully(codecPrivateData);
-          System.out.println("Codec Private Data: " + bytesToHex(codecPrivateData));
+          track.codecPrivate = readBytes(buf, elementSize);
           break;
         case CODEC_NAME:
-          String codecName = parseStringElement(dis, (int) elementSize);
-          System.out.println("Codec Name: " + codecName);
+          track.codecName = parseStringElement(buf, (int) elementSize);
           break;
         case ATTACHMENT_LINK:
-          long attachmentLink = readUnsignedInt(dis, elementSize);
-          System.out.println("Attachment Link: " + attachmentLink);
-          break;
-        case CODEC_SETTINGS:
-          String codecSettings = parseStringElement(dis, (int) elementSize);
-          System.out.println("Codec Settings: " + codecSettings);
-          break;
-        case CODEC_INFO_URL:
-          String codecInfoURL = parseStringElement(dis, (int) elementSize);
-          System.out.println("Codec Info URL: " + codecInfoURL);
-          break;
-        case CODEC_DOWNLOAD_URL:
-          String codecDownloadURL = parseStringElement(dis, (int) elementSize);
-          System.out.println("Codec Download URL: " + codecDownloadURL);
+          track.attachmentLink = readUnsignedInt(buf, elementSize);
           break;
         case CODEC_DECODE_ALL:
-          int codecDecodeAll = dis.readUnsignedByte();
-          System.out.println("Codec Decode All: " + codecDecodeAll);
+          track.codecDecodeAll = readUnsignedInt(buf, elementSize) != 0;
           break;
         case TRACK_OVERLAY:
-          long trackOverlay = readUnsignedInt(dis, elementSize);
-          System.out.println("Track Overlay: " + trackOverlay);
+          track.trackOverlay = readUnsignedInt(buf, elementSize);
           break;
         case CODEC_DELAY:
-          long codecDelay = readUnsignedInt(dis, elementSize);
-          System.out.println("Codec Delay: " + codecDelay);
+          track.codecDelay = readUnsignedInt(buf, elementSize);
           break;
         case SEEK_PRE_ROLL:
-          long seekPreRoll = readUnsignedInt(dis, elementSize);
-          System.out.println("Seek Pre Roll: " + seekPreRoll);
+          track.seekPreRoll = readUnsignedInt(buf, elementSize);
           break;
         case TRACK_TRANSLATE:
-          System.out.println("Found Track Translate");
-          parseTrackTranslate(dis, elementSize);
+          parseTrackTranslate(buf, elementSize, track);
           break;
         case VIDEO:
-          System.out.println("Found Video Track");
-          parseVideo(dis, elementSize);
+          parseVideo(buf, elementSize, track);
           break;
         case AUDIO:
-          System.out.println("Found Audio Track");
-          parseAudio(dis, elementSize);
+          parseAudio(buf, elementSize, track);
           break;
         case CONTENT_ENCODINGS:
-          System.out.println("Found Content Encodings");
-          parseContentEncodings(dis, elementSize);
+          parseContentEncodings(buf, elementSize, track);
           break;
         default:
-          System.out.println("Unknown element in Track Entry: " + Long.toHexString(elementId));
-          dis.skipBytes((int) elementSize);
+          // CodecSettings, CodecInfoURL, CodecDownloadURL and unknown elements
+          skip(buf, elementSize);
           break;
       }
     }
+    if (videoTrack == 0 && track.isVideo()) {
+      videoTrack = track.trackNumber;
+    }
+    handler.onTrackEntry(track);
   }
 
-  private void parseVideo(DataInputStream dis, long size) throws IOException {
-    long bytesRead = 0;
-    while (bytesRead < size) {
-      EBMLElement idElement = readElementId(dis);
-      EBMLElement sizeElement = readElementSize(dis);
-
-      long elementId = idElement.idOrSize;
-      long elementSize = sizeElement.idOrSize;
-
-      bytesRead += idElement.length + sizeElement.length + elementSize;
+  private void parseVideo(ByteBuffer buf, long size, WebMHandler.TrackEntry track)
+      throws IOException {
+    int end = buf.position() + (int) size;
+    while (buf.position() < end) {
+      long elementId = readElementId(buf);
+      long elementSize = readElementSize(buf);
 
       switch ((int) elementId) {
         case FLAG_INTERLACED:
-          int flagInterlaced = dis.readUnsignedByte();
-          System.out.println("Flag Interlaced: " + flagInterlaced);
+          track.interlaced = readUnsignedInt(buf, elementSize) == 1;
           break;
         case FIELD_ORDER:
-          int fieldOrder = dis.readUnsignedByte();
-          System.out.println("Field Order: " + fieldOrder);
+          track.fieldOrder = readUnsignedInt(buf, elementSize);
           break;
         case STEREO_MODE:
-          int stereoMode = dis.readUnsignedByte();
-          System.out.println("Stereo Mode: " + stereoMode);
+          track.stereoMode = readUnsignedInt(buf, elementSize);
           break;
         case ALPHA_MODE:
-          int alphaMode = dis.readUnsignedByte();
-          System.out.println("Alpha Mode: " + alphaMode);
+          track.alphaMode = readUnsignedInt(buf, elementSize);
           break;
         case PIXEL_WIDTH:
-          long pixelWidth = readUnsignedInt(dis, elementSize);
-          System.out.println("Pixel Width: " + pixelWidth);
+          track.pixelWidth = readUnsignedInt(buf, elementSize);
           break;
         case PIXEL_HEIGHT:
-          long pixelHeight = readUnsignedInt(dis, elementSize);
-          System.out.println("Pixel Height: " + pixelHeight);
+          track.pixelHeight = readUnsignedInt(buf, elementSize);
           break;
         case DISPLAY_WIDTH:
-          long displayWidth = readUnsignedInt(dis, elementSize);
-          System.out.println("Display Width: " + displayWidth);
+          track.displayWidth = readUnsignedInt(buf, elementSize);
           break;
         case DISPLAY_HEIGHT:
-          long displayHeight = readUnsignedInt(dis, elementSize);
-          System.out.println("Display Height: " + displayHeight);
+          track.displayHeight = readUnsignedInt(buf, elementSize);
           break;
         case ASPECT_RATIO_TYPE:
-          int aspectRatioType = dis.readUnsignedByte();
-          System.out.println("Aspect Ratio Type: " + aspectRatioType);
+          track.aspectRatioType = readUnsignedInt(buf, elementSize);
           break;
         case COLOUR:
-          System.out.println("Found Colour");
-          parseColor(dis, elementSize);
+          parseColor(buf, elementSize, track);
           break;
         case PROJECTION:
-          System.out.println("Found Projection");
-          parseProjection(dis, elementSize);
+          parseProjection(buf, elementSize, track);
           break;
         default:
-          System.out.println("Unknown element in Video: " + Long.toHexString(elementId));
-          dis.skipBytes((int) elementSize);
+          skip(buf, elementSize);
           break;
       }
     }
   }
 
-  private void parseColor(DataInputStream dis, long size) throws IOException {
-    long bytesRead = 0;
-    while (bytesRead < size) {
-      EBMLElement idElement = readElementId(dis);
-      EBMLElement sizeElement = readElementSize(dis);
-
-      long elementId = idElement.idOrSize;
-      long elementSize = sizeElement.idOrSize;
-
-      bytesRead += idElement.length + sizeElement.length + elementSize;
+  private void parseColor(ByteBuffer buf, long size, WebMHandler.TrackEntry track)
+      throws IOException {
+    int end = buf.position() + (int) size;
+    while (buf.position() < end) {
+      long elementId = readElementId(buf);
+      long elementSize = readElementSize(buf);
 
       switch ((int) elementId) {
         case MATRIX_COEFFICIENTS:
-          int matrixCoefficients = dis.readUnsignedByte();
-          System.out.println("Matrix Coefficients: " + matrixCoefficients);
+          track.matrixCoefficients = readUnsignedInt(buf, elementSize);
           break;
         case BITS_PER_CHANNEL:
-          int bitsPerChannel = dis.readUnsignedByte();
-          System.out.println("Bits Per Channel: " + bitsPerChannel);
+          track.bitsPerChannel = readUnsignedInt(buf, elementSize);
           break;
         case CHROMA_SUBSAMPLING_HORZ:
-          int chromaSubsamplingHorz = dis.readUnsignedByte();
-          System.out.println("Chroma Subsampling Horizontal: " + chromaSubsamplingHorz);
+          track.chromaSubsamplingHorz = readUnsignedInt(buf, elementSize);
           break;
         case CHROMA_SUBSAMPLING_VERT:
-          int chromaSubsamplingVert = dis.readUnsignedByte();
-          System.out.println("Chroma Subsampling Vertical: " + chromaSubsamplingVert);
+          track.chromaSubsamplingVert = readUnsignedInt(buf, elementSize);
           break;
         case RANGE:
-          int range = dis.readUnsignedByte();
-          System.out.println("Range: " + range);
+          track.range = readUnsignedInt(buf, elementSize);
           break;
         case TRANSFER_CHARACTERISTICS:
-          int transferCharacteristics = dis.readUnsignedByte();
-          System.out.println("Transfer Characteristics: " + transferCharacteristics);
+          track.transferCharacteristics = readUnsignedInt(buf, elementSize);
           break;
         case PRIMARIES:
-          int primaries = dis.readUnsignedByte();
-          System.out.println("Primaries: " + primaries);
+          track.primaries = readUnsignedInt(buf, elementSize);
           break;
         case MAX_CLL:
-          int maxCLL = dis.readInt();
-          System.out.println("Max Content Light Level (CLL): " + maxCLL);
+          track.maxCll = readUnsignedInt(buf, elementSize);
           break;
         case MAX_FALL:
-          int maxFALL = dis.readInt();
-          System.out.println("Max Frame-Average Light Level (FALL): " + maxFALL);
+          track.maxFall = readUnsignedInt(buf, elementSize);
           break;
         default:
-          System.out.println("Unknown element in Colour: " + Long.toHexString(elementId));
-          dis.skipBytes((int) elementSize);
+          skip(buf, elementSize);
           break;
       }
     }
   }
 
-  private void parseProjection(DataInputStream dis, long size) throws IOException {
-    long bytesRead = 0;
-    while (bytesRead < size) {
-      EBMLElement idElement = readElementId(dis);
-      EBMLElement sizeElement = readElementSize(dis);
-
-      long elementId = idElement.idOrSize;
-      long elementSize = sizeElement.idOrSize;
-
-      bytesRead += idElement.length + sizeElement.length + elementSize;
+  private void parseProjection(ByteBuffer buf, long size, WebMHandler.TrackEntry track)
+      throws IOException {
+    int end = buf.position() + (int) size;
+    while (buf.position() < end) {
+      long elementId = readElementId(buf);
+      long elementSize = readElementSize(buf);
 
       switch ((int) elementId) {
         case PROJECTION_TYPE:
-          int projectionType = dis.readUnsignedByte();
-          System.out.println("Projection Type: " + projectionType);
+          track.projectionType = readUnsignedInt(buf, elementSize);
           break;
         case PROJECTION_PRIVATE:
-          byte[] projectionPrivateData = new byte[(int) elementSize];
-          dis.readFully(projectionPrivateData);
-          System.out.println("Projection Private Data: " + bytesToHex(projectionPrivateData));
+          track.projectionPrivate = readBytes(buf, elementSize);
           break;
         case PROJECTION_POSE_YAW:
-          double projectionPoseYaw = readFloat(dis, elementSize);
-          System.out.println("Projection Pose Yaw: " + projectionPoseYaw);
+          track.projectionPoseYaw = readFloat(buf, elementSize);
           break;
         case PROJECTION_POSE_PITCH:
-          double projectionPosePitch = readFloat(dis, elementSize);
-          System.out.println("Projection Pose Pitch: " + projectionPosePitch);
+          track.projectionPosePitch = readFloat(buf, elementSize);
           break;
         case PROJECTION_POSE_ROLL:
-          double projectionPoseRoll = readFloat(dis, elementSize);
-          System.out.println("Projection Pose Roll: " + projectionPoseRoll);
+          track.projectionPoseRoll = readFloat(buf, elementSize);
           break;
         default:
-          System.out.println("Unknown element in Projection: " + Long.toHexString(elementId));
-          dis.skipBytes((int) elementSize);
+          skip(buf, elementSize);
           break;
       }
     }
   }
 
-  private void parseAudio(DataInputStream dis, long size) throws IOException {
-    long bytesRead = 0;
-    while (bytesRead < size) {
-      EBMLElement idElement = readElementId(dis);
-      EBMLElement sizeElement = readElementSize(dis);
-
-      long elementId = idElement.idOrSize;
-      long elementSize = sizeElement.idOrSize;
-
-      bytesRead += idElement.length + sizeElement.length + elementSize;
+  private void parseAudio(ByteBuffer buf, long size, WebMHandler.TrackEntry track)
+      throws IOException {
+    int end = buf.position() + (int) size;
+    while (buf.position() < end) {
+      long elementId = readElementId(buf);
+      long elementSize = readElementSize(buf);
 
       switch ((int) elementId) {
         case SAMPLING_FREQUENCY:
-          double samplingFrequency = readFloat(dis, elementSize);
-          System.out.println("Sampling Frequency: " + samplingFrequency);
+          track.samplingFrequency = readFloat(buf, elementSize);
           break;
         case OUTPUT_SAMPLING_FREQUENCY:
-          double outputSamplingFrequency = readFloat(dis, elementSize);
-          System.out.println("Output Sampling Frequency: " + outputSamplingFrequency);
+          track.outputSamplingFrequency = readFloat(buf, elementSize);
           break;
         case CHANNELS:
-          long channels = readUnsignedInt(dis, elementSize);
-          System.out.println("Channels: " + channels);
+          track.channels = readUnsignedInt(buf, elementSize);
           break;
         case BIT_DEPTH:
-          long bitDepth = readUnsignedInt(dis, elementSize);
-          System.out.println("Bit Depth: " + bitDepth);
+          track.bitDepth = readUnsignedInt(buf, elementSize);
           break;
         default:
-          System.out.println("Unknown element in Audio: " + Long.toHexString(elementId));
-          dis.skipBytes((int) elementSize);
+          skip(buf, elementSize);
           break;
       }
     }
   }
 
-  private void parseBlockAdditionMapping(DataInputStream dis, long size) throws IOException {
-    long bytesRead = 0;
-    while (bytesRead < size) {
-      EBMLElement idElement = readElementId(dis);
-      EBMLElement sizeElement = readElementSize(dis);
-
-      long elementId = idElement.idOrSize;
-      long elementSize = sizeElement.idOrSize;
-
-      bytesRead += idElement.length + sizeElement.length + elementSize;
+  private void parseBlockAdditionMapping(ByteBuffer buf, long size,
+      WebMHandler.TrackEntry track) throws IOException {
+    int end = buf.position() + (int) size;
+    while (buf.position() < end) {
+      long elementId = readElementId(buf);
+      long elementSize = readElementSize(buf);
 
       switch ((int) elementId) {
         case BLOCK_ADD_ID_VALUE:
-          long blockAddIDValue = readUnsignedInt(dis, elementSize);
-          System.out.println("Block Add ID Value: " + blockAddIDValue);
+          track.blockAddIdValue = readUnsignedInt(buf, elementSize);
           break;
         case BLOCK_ADD_ID_NAME:
-          String blockAddIDName = parseStringElement(dis, (int) elementSize);
-          System.out.println("Block Add ID Name: " + blockAddIDName);
+          track.blockAddIdName = parseStringElement(buf, (int) elementSize);
           break;
         case BLOCK_ADD_ID_TYPE:
-          long blockAddIDType = readUnsignedInt(dis, elementSize);
-          System.out.println("Block Add ID Type: " + blockAddIDType);
+          track.blockAddIdType = readUnsignedInt(buf, elementSize);
           break;
         case BLOCK_ADD_ID_EXTRA_DATA:
-          byte[] blockAddIDExtraData = new byte[(int) elementSize];
-          dis.readFully(blockAddIDExtraData);
-          System.out.println("Block Add ID Extra Data: " + bytesToHex(blockAddIDExtraData));
+          track.blockAddIdExtraData = readBytes(buf, elementSize);
           break;
         default:
-          System.out.println(
-              "Unknown element in Block Addition Mapping: " + Long.toHexString(elementId));
-          dis.skipBytes((int) elementSize);
+          skip(buf, elementSize);
           break;
       }
     }
   }
 
-  private void parseTrackTranslate(DataInputStream dis, long size) throws IOException {
-    long bytesRead = 0;
-    while (bytesRead < size) {
-      EBMLElement idElement = readElementId(dis);
-      EBMLElement sizeElement = readElementSize(dis);
-
-      long elementId = idElement.idOrSize;
-      long elementSize = sizeElement.idOrSize;
-
-      bytesRead += idElement.length + sizeElement.length + elementSize;
+  private void parseTrackTranslate(ByteBuffer buf, long size, WebMHandler.TrackEntry track)
+      throws IOException {
+    int end = buf.position() + (int) size;
+    while (buf.position() < end) {
+      long elementId = readElementId(buf);
+      long elementSize = readElementSize(buf);
 
       switch ((int) elementId) {
         case TRACK_TRANSLATE_TRACK_ID:
-          byte[] trackTranslateTrackID = new byte[(int) elementSize];
-          dis.readFully(trackTranslateTrackID);
-          System.out.println("Track Translate Track ID: " + bytesToHex(trackTranslateTrackID));
+          track.trackTranslateTrackId = readBytes(buf, elementSize);
           break;
         case TRACK_TRANSLATE_CODEC:
-          long trackTranslateCodec = readUnsignedInt(dis, elementSize);
-          System.out.println("Track Translate Codec: " + trackTranslateCodec);
+          track.trackTranslateCodec = readUnsignedInt(buf, elementSize);
           break;
         case TRACK_TRANSLATE_EDITION_UID:
-          long trackTranslateEditionUID = readUnsignedInt(dis, elementSize);
-          System.out.println("Track Translate Edition UID: " + trackTranslateEditionUID);
+          track.trackTranslateEditionUid = readUnsignedInt(buf, elementSize);
           break;
         default:
-          System.out.println("Unknown element in Track Translate: " + Long.toHexString(elementId));
-          dis.skipBytes((int) elementSize);
+          skip(buf, elementSize);
           break;
       }
     }
   }
 
-  private void parseContentEncodings(DataInputStream dis, long size) throws IOException {
-    long bytesRead = 0;
-    while (bytesRead < size) {
-      EBMLElement idElement = readElementId(dis);
-      EBMLElement sizeElement = readElementSize(dis);
-
-      long elementId = idElement.idOrSize;
-      long elementSize = sizeElement.idOrSize;
-
-      bytesRead += idElement.length + sizeElement.length + elementSize;
+  private void parseContentEncodings(ByteBuffer buf, long size,
+      WebMHandler.TrackEntry track) throws IOException {
+    int end = buf.position() + (int) size;
+    while (buf.position() < end) {
+      long elementId = readElementId(buf);
+      long elementSize = readElementSize(buf);
 
       if (elementId == CONTENT_ENCODING) {
-        System.out.println("Found Content Encoding");
-        parseContentEncoding(dis, elementSize);
+        parseContentEncoding(buf, elementSize, track);
       } else {
-        System.out.println("Unknown element in Content Encodings: " + Long.toHexString(elementId));
-        dis.skipBytes((int) elementSize);
+        skip(buf, elementSize);
       }
     }
   }
 
-  private void parseContentEncoding(DataInputStream dis, long size) throws IOException {
-    long bytesRead = 0;
-    while (bytesRead < size) {
-      EBMLElement idElement = readElementId(dis);
-      EBMLElement sizeElement = readElementSize(dis);
-
-      long elementId = idElement.idOrSize;
-      long elementSize = sizeElement.idOrSize;
-
-      bytesRead += idElement.length + sizeElement.length + elementSize;
+  private void parseContentEncoding(ByteBuffer buf, long size,
+      WebMHandler.TrackEntry track) throws IOException {
+    int end = buf.position() + (int) size;
+    while (buf.position() < end) {
+      long elementId = readElementId(buf);
+      long elementSize = readElementSize(buf);
 
       switch ((int) elementId) {
         case CONTENT_ENCODING_ORDER:
-          long contentEncodingOrder = readUnsignedInt(dis, elementSize);
-          System.out.println("Content Encoding Order: " + contentEncodingOrder);
+          track.contentEncodingOrder = readUnsignedInt(buf, elementSize);
           break;
         case CONTENT_ENCODING_SCOPE:
-          long contentEncodingScope = readUnsignedInt(dis, elementSize);
-          System.out.println("Content Encoding Scope: " + contentEncodingScope);
-          System.out.println("    1 - All frame contents");
-          System.out.println("    2 - The track's private data");
-          System.out.println("    4 - Next ContentEncoding (deprecated)");
+          track.contentEncodingScope = readUnsignedInt(buf, elementSize);
           break;
         case CONTENT_ENCODING_TYPE:
-          long contentEncodingType = readUnsignedInt(dis, elementSize);
-          System.out.println("Content Encoding Type: " + contentEncodingType);
-          System.out.println("    0 - Compression");
-          System.out.println("    1 - Encryption");
+          track.contentEncodingType = readUnsignedInt(buf, elementSize);
           break;
         case CONTENT_COMPRESSION:
-          System.out.println("Found Content Compression");
-          parseContentCompression(dis, elementSize);
+          parseContentCompression(buf, elementSize, track);
           break;
         case CONTENT_ENCRYPTION:
-          System.out.println("Found Content Encryption");
-          parseContentEncryption(dis, elementSize);
+          parseContentEncryption(buf, elementSize, track);
           break;
         default:
-          System.out.println("Unknown element in Content Encoding: " + Long.toHexString(elementId));
-          dis.skipBytes((int) elementSize);
+          skip(buf, elementSize);
           break;
       }
     }
   }
 
-  private void parseContentCompression(DataInputStream dis, long size) throws IOException {
-    long bytesRead = 0;
-    while (bytesRead < size) {
-      EBMLElement idElement = readElementId(dis);
-      EBMLElement sizeElement = readElementSize(dis);
-
-      long elementId = idElement.idOrSize;
-      long elementSize = sizeElement.idOrSize;
-
-      bytesRead += idElement.length + sizeElement.length + elementSize;
+  private void parseContentCompression(ByteBuffer buf, long size,
+      WebMHandler.TrackEntry track) throws IOException {
+    int end = buf.position() + (int) size;
+    while (buf.position() < end) {
+      long elementId = readElementId(buf);
+      long elementSize = readElementSize(buf);
 
       switch ((int) elementId) {
         case CONTENT_COMP_ALGO:
-          long contentCompAlgo = readUnsignedInt(dis, elementSize);
-          System.out.println("Content Compression Algorithm: " + contentCompAlgo);
-          System.out.println("    0 - zlib");
-          System.out.println("    1 - bzlib");
-          System.out.println("    2 - lzo1x");
-          System.out.println("    3 - Header Stripping");
+          track.contentCompAlgo = readUnsignedInt(buf, elementSize);
           break;
         case CONTENT_COMP_SETTINGS:
-          byte[] contentCompSettings = new byte[(int) elementSize];
-          dis.readFully(contentCompSettings);
-          System.out.println("Content Compression Settings: " + bytesToHex(contentCompSettings));
+          track.contentCompSettings = readBytes(buf, elementSize);
           break;
         default:
-          System.out.println(
-              "Unknown element in Content Compression: " + Long.toHexString(elementId));
-          dis.skipBytes((int) elementSize);
+          skip(buf, elementSize);
           break;
       }
     }
   }
 
-  private void parseContentEncryption(DataInputStream dis, long size) throws IOException {
-    long bytesRead = 0;
-    while (bytesRead < size) {
-      EBMLElement idElement = readElementId(dis);
-      EBMLElement sizeElement = readElementSize(dis);
-
-      long elementId = idElement.idOrSize;
-      long elementSize = sizeElement.idOrSize;
-
-      bytesRead += idElement.length + sizeElement.length + elementSize;
+  private void parseContentEncryption(ByteBuffer buf, long size,
+      WebMHandler.TrackEntry track) throws IOException {
+    int end = buf.position() + (int) size;
+    while (buf.position() < end) {
+      long elementId = readElementId(buf);
+      long elementSize = readElementSize(buf);
 
       switch ((int) elementId) {
         case CONTENT_ENC_ALGO:
-          long contentEncAlgo = readUnsignedInt(dis, elementSize);
-          System.out.println("Content Encryption Algorithm: " + contentEncAlgo);
-          System.out.println("    0 - Not encrypted");
-          System.out.println("    1 - DES");
-          System.out.println("    2 - 3DES");
-          System.out.println("    3 - Twofish");
-          System.out.println("    4 - Blowfish");
-          System.out.println("    5 - AES");
+          track.contentEncAlgo = readUnsignedInt(buf, elementSize);
           break;
         case CONTENT_ENC_KEY_ID:
-          byte[] contentEncKeyID = new byte[(int) elementSize];
-          dis.readFully(contentEncKeyID);
-          System.out.println("Content Encryption Key ID: " + bytesToHex(contentEncKeyID));
+          track.contentEncKeyId = readBytes(buf, elementSize);
           break;
         case CONTENT_ENC_AES_SETTINGS:
-          System.out.println("Found Content Encryption AES Settings");
-          parseContentEncAESSettings(dis, elementSize);
+          parseContentEncAESSettings(buf, elementSize, track);
           break;
         default:
-          System.out.println(
-              "Unknown element in Content Encryption: " + Long.toHexString(elementId));
-          dis.skipBytes((int) elementSize);
+          skip(buf, elementSize);
           break;
       }
     }
   }
 
-  private void parseContentEncAESSettings(DataInputStream dis, long size) throws IOException {
-    long bytesRead = 0;
-    while (bytesRead < size) {
-      EBMLElement idElement = readElementId(dis);
-      EBMLElement sizeElement = readElementSize(dis);
-
-      long elementId = idElement.idOrSize;
-      long elementSize = sizeElement.idOrSize;
-
-      bytesRead += idElement.length + sizeElement.length + elementSize;
+  private void parseContentEncAESSettings(ByteBuffer buf, long size,
+      WebMHandler.TrackEntry track) throws IOException {
+    int end = buf.position() + (int) size;
+    while (buf.position() < end) {
+      long elementId = readElementId(buf);
+      long elementSize = readElementSize(buf);
 
       if (elementId == AES_SETTINGS_CIPHER_MODE) {
-        long aesCipherMode = readUnsignedInt(dis, elementSize);
-        System.out.println("AES Settings Cipher Mode: " + aesCipherMode);
-        System.out.println("    1 - AES-CTR");
-        System.out.println("    2 - AES-CBC");
+        track.aesSettingsCipherMode = readUnsignedInt(buf, elementSize);
       } else {
-        System.out.println(
-            "Unknown element in Content Enc AES Settings: " + Long.toHexString(elementId));
-        dis.skipBytes((int) elementSize);
+        skip(buf, elementSize);
       }
     }
   }
 
-  private void parseChapters(DataInputStream dis, long size) throws IOException {
-    long bytesRead = 0;
-    while (bytesRead < size) {
-      EBMLElement idElement = readElementId(dis);
-      EBMLElement sizeElement = readElementSize(dis);
-
-      long elementId = idElement.idOrSize;
-      long elementSize = sizeElement.idOrSize;
-
-      bytesRead += idElement.length + sizeElement.length + elementSize;
+  private void parseChapters(ByteBuffer buf, long size) throws IOException {
+    int end = buf.position() + (int) size;
+    while (buf.position() < end) {
+      long elementId = readElementId(buf);
+      long elementSize = readElementSize(buf);
 
       if (elementId == EDITION_ENTRY) {
-        System.out.println("Found Edition Entry");
-        parseEditionEntry(dis, elementSize);
+        parseEditionEntry(buf, elementSize);
       } else {
-        System.out.println("Unknown element in Chapters: " + Long.toHexString(elementId));
-        dis.skipBytes((int) elementSize);
+        skip(buf, elementSize);
       }
     }
   }
 
-  private void parseEditionEntry(DataInputStream dis, long size) throws IOException {
-    long bytesRead = 0;
-    while (bytesRead < size) {
-      EBMLElement idElement = readElementId(dis);
-      EBMLElement sizeElement = readElementSize(dis);
-
-      long elementId = idElement.idOrSize;
-      long elementSize = sizeElement.idOrSize;
-
-      bytesRead += idElement.length + sizeElement.length + elementSize;
+  private void parseEditionEntry(ByteBuffer buf, long size) throws IOException {
+    long editionUid = 0;
+    boolean editionDefault = false;
+    boolean editionOrdered = false;
+    int end = buf.position() + (int) size;
+    while (buf.position() < end) {
+      long elementId = readElementId(buf);
+      long elementSize = readElementSize(buf);
 
       switch ((int) elementId) {
         case EDITION_UID:
-          long editionUID = readUnsignedInt(dis, elementSize);
-          System.out.println("Edition UID: " + editionUID);
+          editionUid = readUnsignedInt(buf, elementSize);
           break;
         case EDITION_FLAG_DEFAULT:
-          int flagDefault = dis.readUnsignedByte();
-          System.out.println("Edition Flag Default: " + flagDefault);
+          editionDefault = readUnsignedInt(buf, elementSize) != 0;
           break;
         case EDITION_FLAG_ORDERED:
-          int flagOrdered = dis.readUnsignedByte();
-          System.out.println("Edition Flag Ordered: " + flagOrdered);
+          editionOrdered = readUnsignedInt(buf, elementSize) != 0;
           break;
         case CHAPTER_ATOM:
-          System.out.println("Found Chapter Atom");
-          parseChapterAtom(dis, elementSize);
+          WebMHandler.ChapterAtom chapter = new WebMHandler.ChapterAtom();
+          chapter.editionUid = editionUid;
+          chapter.editionDefault = editionDefault;
+          chapter.editionOrdered = editionOrdered;
+          parseChapterAtom(buf, elementSize, chapter);
+          handler.onChapterAtom(chapter);
           break;
         default:
-          System.out.println("Unknown element in Edition Entry: " + Long.toHexString(elementId));
-          dis.skipBytes((int) elementSize);
+          skip(buf, elementSize);
           break;
       }
     }
   }
 
-  private void parseChapterAtom(DataInputStream dis, long size) throws IOException {
-    long bytesRead = 0;
-    while (bytesRead < size) {
-      EBMLElement idElement = readElementId(dis);
-      EBMLElement sizeElement = readElementSize(dis);
-
-      long elementId = idElement.idOrSize;
-      long elementSize = sizeElement.idOrSize;
-
-      bytesRead += idElement.length + sizeElement.length + elementSize;
+  private void parseChapterAtom(ByteBuffer buf, long size, WebMHandler.ChapterAtom chapter)
+      throws IOException {
+    int end = buf.position() + (int) size;
+    while (buf.position() < end) {
+      long elementId = readElementId(buf);
+      long elementSize = readElementSize(buf);
 
       switch ((int) elementId) {
         case CHAPTER_UID:
-          long chapterUID = readUnsignedInt(dis, elementSize);
-          System.out.println("Chapter UID: " + chapterUID);
+          chapter.uid = readUnsignedInt(buf, elementSize);
           break;
         case CHAPTER_STRING_UID:
-          String chapterStringUID = parseStringElement(dis, (int) elementSize);
-          System.out.println("Chapter String UID: " + chapterStringUID);
+          chapter.stringUid = parseStringElement(buf, (int) elementSize);
           break;
         case CHAPTER_TIME_START:
-          long chapterTimeStart = readUnsignedInt(dis, elementSize);
-          System.out.println("Chapter Time Start: " + chapterTimeStart);
+          chapter.timeStart = readUnsignedInt(buf, elementSize);
           break;
         case CHAPTER_TIME_END:
-          long chapterTimeEnd = readUnsignedInt(dis, elementSize);
-          System.out.println("Chapter Time End: " + chapterTimeEnd);
+          chapter.timeEnd = readUnsignedInt(buf, elementSize);
           break;
         case CHAPTER_FLAG_HIDDEN:
-          int chapterFlagHidden = dis.readUnsignedByte();
-          System.out.println("Chapter Flag Hidden: " + chapterFlagHidden);
+          chapter.hidden = readUnsignedInt(buf, elementSize) != 0;
           break;
         case CHAPTER_DISPLAY:
-          System.out.println("Found Chapter Display");
-          parseChapterDisplay(dis, elementSize);
+          parseChapterDisplay(buf, elementSize, chapter);
           break;
         default:
-          System.out.println("Unknown element in Chapter Atom: " + Long.toHexString(elementId));
-          dis.skipBytes((int) elementSize);
+          skip(buf, elementSize);
           break;
       }
     }
   }
 
-  private void parseChapterDisplay(DataInputStream dis, long size) throws IOException {
-    long bytesRead = 0;
-    while (bytesRead < size) {
-      EBMLElement idElement = readElementId(dis);
-      EBMLElement sizeElement = readElementSize(dis);
-
-      long elementId = idElement.idOrSize;
-      long elementSize = sizeElement.idOrSize;
-
-      bytesRead += idElement.length + sizeElement.length + elementSize;
+  private void parseChapterDisplay(ByteBuffer buf, long size,
+      WebMHandler.ChapterAtom chapter) throws IOException {
+    int end = buf.position() + (int) size;
+    while (buf.position() < end) {
+      long elementId = readElementId(buf);
+      long elementSize = readElementSize(buf);
 
       switch ((int) elementId) {
         case CHAP_STRING:
-          String chapString = parseStringElement(dis, (int) elementSize);
-          System.out.println("ChapString: " + chapString);
+          chapter.title = parseStringElement(buf, (int) elementSize);
           break;
         case CHAP_LANGUAGE:
-          String chapLanguage = parseStringElement(dis, (int) elementSize);
-          System.out.println("ChapLanguage: " + chapLanguage);
+          chapter.language = parseStringElement(buf, (int) elementSize);
           break;
         default:
-          System.out.println("Unknown element in Chapter Display: " + Long.toHexString(elementId));
-          dis.skipBytes((int) elementSize);
+          skip(buf, elementSize);
           break;
       }
     }
   }
 
-  private void parseCues(DataInputStream dis, long size) throws IOException {
-    long bytesRead = 0;
-    while (bytesRead < size) {
-      EBMLElement idElement = readElementId(dis);
-      EBMLElement sizeElement = readElementSize(dis);
-
-      long elementId = idElement.idOrSize;
-      long elementSize = sizeElement.idOrSize;
-
-      bytesRead += idElement.length + sizeElement.length + elementSize;
+  private void parseCues(ByteBuffer buf, long size) throws IOException {
+    int end = buf.position() + (int) size;
+    while (buf.position() < end) {
+      long elementId = readElementId(buf);
+      long elementSize = readElementSize(buf);
 
       if (elementId == CUE_POINT) {
-        System.out.println("Found Cue Point");
-        parseCuePoint(dis, elementSize);
+        parseCuePoint(buf, elementSize);
       } else {
-        System.out.println("Unknown element in Cues: " + Long.toHexString(elementId));
-        dis.skipBytes((int) elementSize);
+        skip(buf, elementSize);
       }
     }
   }
 
-  private void parseCuePoint(DataInputStream dis, long size) throws IOException {
-    long bytesRead = 0;
-    while (bytesRead < size) {
-      EBMLElement idElement = readElementId(dis);
-      EBMLElement sizeElement = readElementSize(dis);
-
-      long elementId = idElement.idOrSize;
-      long elementSize = sizeElement.idOrSize;
-
-      bytesRead += idElement.length + sizeElement.length + elementSize;
+  private void parseCuePoint(ByteBuffer buf, long size) throws IOException {
+    long cueTime = 0;
+    int end = buf.position() + (int) size;
+    while (buf.position() < end) {
+      long elementId = readElementId(buf);
+      long elementSize = readElementSize(buf);
 
       switch ((int) elementId) {
         case CUE_TIME:
-          long cueTime = readUnsignedInt(dis, elementSize);
-          System.out.println("Cue Time: " + cueTime);
+          cueTime = readUnsignedInt(buf, elementSize);
           break;
         case CUE_TRACK_POSITIONS:
-          System.out.println("Found Cue Track Positions");
-          parseCueTrackPositions(dis, elementSize);
+          parseCueTrackPositions(buf, elementSize, cueTime);
           break;
         default:
-          System.out.println("Unknown element in Cue Point: " + Long.toHexString(elementId));
-          dis.skipBytes((int) elementSize);
+          skip(buf, elementSize);
           break;
       }
     }
   }
 
-  private void parseCueTrackPositions(DataInputStream dis, long size) throws IOException {
-    long bytesRead = 0;
-    while (bytesRead < size) {
-      EBMLElement idElement = readElementId(dis);
-      EBMLElement sizeElement = readElementSize(dis);
-
-      long elementId = idElement.idOrSize;
-      long elementSize = sizeElement.idOrSize;
-
-      bytesRead += idElement.length + sizeElement.length + elementSize;
+  private void parseCueTrackPositions(ByteBuffer buf, long size, long cueTime)
+      throws IOException {
+    long cueTrack = 0;
+    long cueClusterPosition = 0;
+    int end = buf.position() + (int) size;
+    while (buf.position() < end) {
+      long elementId = readElementId(buf);
+      long elementSize = readElementSize(buf);
 
       switch ((int) elementId) {
         case CUE_TRACK:
-          long cueTrack = readUnsignedInt(dis, elementSize);
-          System.out.println("Cue Track: " + cueTrack);
+          cueTrack = readUnsignedInt(buf, elementSize);
           break;
         case CUE_CLUSTER_POSITION:
-          long cueClusterPosition = readUnsignedInt(dis, elementSize);
-          System.out.println("Cue Cluster Position: " + cueClusterPosition);
+          cueClusterPosition = readUnsignedInt(buf, elementSize);
           break;
         default:
-          System.out.println(
-              "Unknown element in Cue Track Positions: " + Long.toHexString(elementId));
-          dis.skipBytes((int) elementSize);
+          skip(buf, elementSize);
           break;
       }
     }
+    if (cueTable == null) {
+      handler.onCuePoint(cueTime, cueTrack, cueClusterPosition);
+    } else if (cueTable.size() == 0
+        || cueTable.offset(cueTable.size() - 1) != segmentStart + cueClusterPosition) {
+      // Cue points of other tracks usually repeat the same Cluster
+      cueTable.add(segmentStart + cueClusterPosition, cueTime, WebMHandler.KEYFRAME);
+    }
   }
 
-  private void parseAttachments(DataInputStream dis, long size) throws IOException {
-    long bytesRead = 0;
-    while (bytesRead < size) {
-      EBMLElement idElement = readElementId(dis);
-      EBMLElement sizeElement = readElementSize(dis);
-
-      long elementId = idElement.idOrSize;
-      long elementSize = sizeElement.idOrSize;
-
-      bytesRead += idElement.length + sizeElement.length + elementSize;
+  private void parseAttachments(ByteBuffer buf, long size) throws IOException {
+    int end = buf.position() + (int) size;
+    while (buf.position() < end) {
+      long elementId = readElementId(buf);
+      long elementSize = readElementSize(buf);
 
       if (elementId == ATTACHED_FILE) {
-        System.out.println("Found Attached File");
-        parseAttachedFile(dis, elementSize);
+        parseAttachedFile(buf, elementSize);
       } else {
-        System.out.println("Unknown element in Attachments: " + Long.toHexString(elementId));
-        dis.skipBytes((int) elementSize);
+        skip(buf, elementSize);
       }
     }
   }
 
-  private void parseAttachedFile(DataInputStream dis, long size) throws IOException {
-    long bytesRead = 0;
-    while (bytesRead < size) {
-      EBMLElement idElement = readElementId(dis);
-      EBMLElement sizeElement = readElementSize(dis);
-
-      long elementId = idElement.idOrSize;
-      long elementSize = sizeElement.idOrSize;
-
-      bytesRead += idElement.length + sizeElement.length + elementSize;
+  private void parseAttachedFile(ByteBuffer buf, long size) throws IOException {
+    WebMHandler.AttachedFile file = new WebMHandler.AttachedFile();
+    int end = buf.position() + (int) size;
+    while (buf.position() < end) {
+      long elementId = readElementId(buf);
+      long elementSize = readElementSize(buf);
 
       switch ((int) elementId) {
         case FILE_DESCRIPTION:
-          String fileDescription = parseStringElement(dis, (int) elementSize);
-          System.out.println("File Description: " + fileDescription);
+          file.description = parseStringElement(buf, (int) elementSize);
           break;
         case FILE_NAME:
-          String fileName = parseStringElement(dis, (int) elementSize);
-          System.out.println("File Name: " + fileName);
+          file.name = parseStringElement(buf, (int) elementSize);
           break;
         case FILE_DATA:
-          byte[] fileData = new byte[(int) elementSize];
-          dis.readFully(fileData);
-          System.out.println("File Data: " + bytesToHex(fileData));
+          file.data = readBytes(buf, elementSize);
           break;
         case FILE_UID:
-          long fileUID = readUnsignedInt(dis, elementSize);
-          System.out.println("File UID: " + fileUID);
+          file.uid = readUnsignedInt(buf, elementSize);
           break;
         default:
-          System.out.println("Unknown element in Attached File: " + Long.toHexString(elementId));
-          dis.skipBytes((int) elementSize);
+          skip(buf, elementSize);
           break;
       }
     }
+    handler.onAttachedFile(file);
   }
 
-  private void parseTags(DataInputStream dis, long size) throws IOException {
-    long bytesRead = 0;
-    while (bytesRead < size) {
-      EBMLElement idElement = readElementId(dis);
-      EBMLElement sizeElement = readElementSize(dis);
-
-      long elementId = idElement.idOrSize;
-      long elementSize = sizeElement.idOrSize;
-
-      bytesRead += idElement.length + sizeElement.length + elementSize;
+  private void parseTags(ByteBuffer buf, long size) throws IOException {
+    int end = buf.position() + (int) size;
+    while (buf.position() < end) {
+      long elementId = readElementId(buf);
+      long elementSize = readElementSize(buf);
 
       if (elementId == TAG) {
-        System.out.println("Found Tag");
-        parseTag(dis, elementSize);
+        parseTag(buf, elementSize);
       } else {
-        System.out.println("Unknown element in Tags: " + Long.toHexString(elementId));
-        dis.skipBytes((int) elementSize);
+        skip(buf, elementSize);
       }
     }
   }
 
-  private void parseTag(DataInputStream dis, long size) throws IOException {
-    long bytesRead = 0;
-    while (bytesRead < size) {
-      EBMLElement idElement = readElementId(dis);
-      EBMLElement sizeElement = readElementSize(dis);
-
-      long elementId = idElement.idOrSize;
-      long elementSize = sizeElement.idOrSize;
-
-      bytesRead += idElement.length + sizeElement.length + elementSize;
+  private void parseTag(ByteBuffer buf, long size) throws IOException {
+    WebMHandler.Tag tag = new WebMHandler.Tag();
+    int end = buf.position() + (int) size;
+    while (buf.position() < end) {
+      long elementId = readElementId(buf);
+      long elementSize = readElementSize(buf);
 
       switch ((int) elementId) {
         case TARGETS:
-          System.out.println("Found Targets");
-          parseTargets(dis, elementSize);
+          parseTargets(buf, elementSize, tag);
           break;
         case SIMPLE_TAG:
-          System.out.println("Found SimpleTag");
-          parseSimpleTag(dis, elementSize);
+          tag.simpleTags.add(parseSimpleTag(buf, elementSize));
           break;
         default:
-          System.out.println("Unknown element in Tag: " + Long.toHexString(elementId));
-          dis.skipBytes((int) elementSize);
+          skip(buf, elementSize);
           break;
       }
     }
+    handler.onTag(tag);
   }
 
-  private void parseTargets(DataInputStream dis, long size) throws IOException {
-    long bytesRead = 0;
-    while (bytesRead < size) {
-      EBMLElement idElement = readElementId(dis);
-      EBMLElement sizeElement = readElementSize(dis);
-
-      long elementId = idElement.idOrSize;
-      long elementSize = sizeElement.idOrSize;
-
-      bytesRead += idElement.length + sizeElement.length + elementSize;
+  private void parseTargets(ByteBuffer buf, long size, WebMHandler.Tag tag)
+      throws IOException {
+    int end = buf.position() + (int) size;
+    while (buf.position() < end) {
+      long elementId = readElementId(buf);
+      long elementSize = readElementSize(buf);
 
       switch ((int) elementId) {
         case TARGET_TYPE_VALUE:
-          long targetTypeValue = readUnsignedInt(dis, elementSize);
-          System.out.println("Target Type Value: " + targetTypeValue);
+          tag.targetTypeValue = readUnsignedInt(buf, elementSize);
           break;
         case TARGET_TYPE:
-          String targetType = parseStringElement(dis, (int) elementSize);
-          System.out.println("Target Type: " + targetType);
+          tag.targetType = parseStringElement(buf, (int) elementSize);
           break;
         case TAG_TRACK_UID:
-          long tagTrackUID = readUnsignedInt(dis, elementSize);
-          System.out.println("Tag Track UID: " + tagTrackUID);
+          tag.trackUid = readUnsignedInt(buf, elementSize);
           break;
         case TAG_EDITION_UID:
-          long tagEditionUID = readUnsignedInt(dis, elementSize);
-          System.out.println("Tag Edition UID: " + tagEditionUID);
+          tag.editionUid = readUnsignedInt(buf, elementSize);
           break;
         case TAG_CHAPTER_UID:
-          long tagChapterUID = readUnsignedInt(dis, elementSize);
-          System.out.println("Tag Chapter UID: " + tagChapterUID);
+          tag.chapterUid = readUnsignedInt(buf, elementSize);
           break;
         case TAG_ATTACHMENT_UID:
-          long tagAttachmentUID = readUnsignedInt(dis, elementSize);
-          System.out.println("Tag Attachment UID: " + tagAttachmentUID);
+          tag.attachmentUid = readUnsignedInt(buf, elementSize);
           break;
         default:
-          System.out.println("Unknown element in Targets: " + Long.toHexString(elementId));
-          dis.skipBytes((int) elementSize);
+          skip(buf, elementSize);
           break;
       }
     }
   }
 
-  private void parseSimpleTag(DataInputStream dis, long size) throws IOException {
-    long bytesRead = 0;
-    while (bytesRead < size) {
-      EBMLElement idElement = readElementId(dis);
-      EBMLElement sizeElement = readElementSize(dis);
-
-      long elementId = idElement.idOrSize;
-      long elementSize = sizeElement.idOrSize;
-
-      bytesRead += idElement.length + sizeElement.length + elementSize;
+  private WebMHandler.SimpleTag parseSimpleTag(ByteBuffer buf, long size)
+      throws IOException {
+    WebMHandler.SimpleTag simpleTag = new WebMHandler.SimpleTag();
+    int end = buf.position() + (int) size;
+    while (buf.position() < end) {
+      long elementId = readElementId(buf);
+      long elementSize = readElementSize(buf);
 
       switch ((int) elementId) {
         case TAG_NAME:
-          String tagName = parseStringElement(dis, (int) elementSize);
-          System.out.println("Tag Name: " + tagName);
+          simpleTag.name = parseStringElement(buf, (int) elementSize);
           break;
         case TAG_LANGUAGE:
-          String tagLanguage = parseStringElement(dis, (int) elementSize);
-          System.out.println("Tag Language: " + tagLanguage);
+          simpleTag.language = parseStringElement(buf, (int) elementSize);
           break;
         case TAG_DEFAULT:
-          int tagDefault = dis.readUnsignedByte();
-          System.out.println("Tag Default: " + tagDefault);
+          simpleTag.isDefault = readUnsignedInt(buf, elementSize) != 0;
           break;
         case TAG_STRING:
-          String tagString = parseStringElement(dis, (int) elementSize);
-          System.out.println("Tag String: " + tagString);
+          simpleTag.string = parseStringElement(buf, (int) elementSize);
           break;
         case TAG_BINARY:
-          byte[] tagBinary = new byte[(int) elementSize];
-          dis.readFully(tagBinary);
-          System.out.println("Tag Binary: " + bytesToHex(tagBinary));
+          simpleTag.binary = readBytes(buf, elementSize);
           break;
         case SIMPLE_TAG:
-          System.out.println("Found Nested SimpleTag");
-          parseSimpleTag(dis, elementSize);
+          simpleTag.children.add(parseSimpleTag(buf, elementSize));
           break;
         default:
-          System.out.println("Unknown element in SimpleTag: " + Long.toHexString(elementId));
-          dis.skipBytes((int) elementSize);
+          skip(buf, elementSize);
           break;
       }
     }
+    return simpleTag;
   }
 
-  private long readSignedInt(DataInputStream dis, long size) throws IOException {
+  private void skip(ByteBuffer buf, long size) throws IOException {
+    if (size > buf.remaining()) {
+      throw new EOFException("Element size " + size + " exceeds remaining " + buf.remaining());
+    }
+    buf.position(buf.position() + (int) size);
+  }
+
+  private long readSignedInt(ByteBuffer buf, long size) throws IOException {
     long value = 0;
     for (int i = 0; i < size; i++) {
-      int b = dis.readUnsignedByte();
+      int b = (buf.get() & 0xFF);
       value = (value << 8) | b;
     }
     // Convert to signed value
@@ -1871,54 +2057,64 @@ public class WebMDecoder {
     return value;
   }
 
-  private String bytesToHex(byte[] bytes) {
-    StringBuilder sb = new StringBuilder();
-    for (byte b : bytes) {
-      sb.append(String.format("%02X ", b));
-    }
-    return sb.toString();
-  }
-
-  private long readUnsignedInt(DataInputStream dis, long size) throws IOException {
+  private long readUnsignedInt(ByteBuffer buf, long size) throws IOException {
     long value = 0;
     for (int i = 0; i < size; i++) {
-      int b = dis.readUnsignedByte();
+      int b = (buf.get() & 0xFF);
       value = (value << 8) | b;
     }
     return value;
   }
 
-  private double readFloat(DataInputStream dis, long size) throws IOException {
+  private double readFloat(ByteBuffer buf, long size) throws IOException {
     if (size == 4) {
-      return dis.readFloat();
+      return buf.getFloat();
     } else if (size == 8) {
-      return dis.readDouble();
+      return buf.getDouble();
     } else {
       throw new IOException("Invalid float size: " + size);
     }
   }
 
   public static void main(String[] args) throws IOException {
-    byte[] webmData = Files.readAllBytes(
-        Path.of("/Users/henneberger/multipart/stream_output.webm"));
-    WebMDecoder decoder = new WebMDecoder();
+    Path path = Path.of(args.length > 0 ? args[0]
+        : "/Users/henneberger/multipart/stream_output.webm");
+    WebMDecoder decoder = new WebMDecoder(new WebMHandler() {
+      @Override
+      public void onEbmlHeader(EbmlHeader header) {
+        System.out.println("Doc Type: " + header.docType + " v" + header.docTypeVersion);
+      }
 
-    try (InputStream inputStream = new ByteArrayInputStream(webmData)) {
-      decoder.decode(inputStream);
-    } catch (IOException e) {
-      e.printStackTrace();
-    }
-  }
+      @Override
+      public void onSegmentInfo(SegmentInfo info) {
+        System.out.println("Timestamp Scale: " + info.timestampScale
+            + ", Muxing App: " + info.muxingApp + ", Writing App: " + info.writingApp);
+      }
+
+      @Override
+      public void onTrackEntry(TrackEntry track) {
+        System.out.println("Track " + track.trackNumber + ": type " + track.trackType
+            + ", codec " + track.codecId);
+      }
 
-  // Helper Classes and Methods
-  class EBMLElement {
+      @Override
+      public void onClusterStart(long timecode) {
+        System.out.println("Cluster Timecode: " + timecode);
+      }
 
-    public int length;
-    public long idOrSize;
+      @Override
+      public void onSimpleBlock(long trackNumber, int relativeTimecode, int flags,
+          ByteBuffer payload) {
+        System.out.println("  Track " + trackNumber + " @" + relativeTimecode
+            + ((flags & KEYFRAME) != 0 ? " keyframe" : "") + ", " + payload.remaining() + " bytes");
+      }
 
-    public EBMLElement(int length, long idOrSize) {
-      this.length = length;
-      this.idOrSize = idOrSize;
-    }
+      @Override
+      public void onCuePoint(long cueTime, long cueTrack, long cueClusterPosition) {
+        System.out.println("Cue " + cueTime + " -> " + cueClusterPosition);
+      }
+    });
+
+    decoder.decode(path);
   }
 }
@@ -0,0 +1,239 @@
+package io.henneberger;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Receives the elements found by {@link WebMDecoder}. Every callback has an empty default, so a
+ * handler only overrides the events it cares about.
+ *
+ * <p>The cluster and block callbacks are invoked once per frame and take primitives only; the
+ * metadata callbacks receive a value object that is populated once per element.
+ */
+public interface WebMHandler {
+
+  // SimpleBlock flag bits
+  int KEYFRAME = 0x80;
+  int INVISIBLE = 0x08;
+  int LACING = 0x06;
+  int DISCARDABLE = 0x01;
+
+  WebMHandler NO_OP = new WebMHandler() {
+  };
+
+  default void onEbmlHeader(EbmlHeader header) {
+  }
+
+  /**
+   * @param size the Segment data size, or {@link WebMDecoder#UNKNOWN_SIZE} for a live recording
+   */
+  default void onSegmentStart(long size) {
+  }
+
+  default void onSeek(long seekId, long seekPosition) {
+  }
+
+  default void onSegmentInfo(SegmentInfo info) {
+  }
+
+  default void onTrackEntry(TrackEntry track) {
+  }
+
+  default void onClusterStart(long timecode) {
+  }
+
+  /**
+   * Called once per frame. Laced blocks produce one call per laced frame, all sharing the same
+   * track, timecode and flags.
+   *
+   * <p>{@code payload} is a view over the decoder's input between its position and limit. It is
+   * only valid for the duration of the call and is reused for the next frame; copy it to keep it.
+   */
+  default void onSimpleBlock(long trackNumber, int relativeTimecode, int flags,
+      ByteBuffer payload) {
+  }
+
+  default void onCuePoint(long cueTime, long cueTrack, long cueClusterPosition) {
+  }
+
+  default void onChapterAtom(ChapterAtom chapter) {
+  }
+
+  default void onAttachedFile(AttachedFile file) {
+  }
+
+  default void onTag(Tag tag) {
+  }
+
+  class EbmlHeader {
+
+    public long version = 1;
+    public long readVersion = 1;
+    public long maxIdLength = 4;
+    public long maxSizeLength = 8;
+    public String docType;
+    public long docTypeVersion = 1;
+    public long docTypeReadVersion = 1;
+    public String docTypeExtensionName;
+    public long docTypeExtensionVersion;
+  }
+
+  class SegmentInfo {
+
+    public byte[] segmentUuid;
+    public String segmentFilename;
+    public byte[] prevUuid;
+    public String prevFilename;
+    public byte[] nextUuid;
+    public String nextFilename;
+    public byte[] segmentFamily;
+    public long timestampScale = 1000000;
+    public double duration = Double.NaN;
+    public long dateUtc;
+    public String title;
+    public String muxingApp;
+    public String writingApp;
+  }
+
+  class TrackEntry {
+
+    // Track types
+    public static final int VIDEO = 1;
+    public static final int AUDIO = 2;
+
+    public long trackNumber;
+    public long trackUid;
+    public int trackType;
+    public boolean enabled = true;
+    public boolean isDefault = true;
+    public boolean forced;
+    public boolean hearingImpaired;
+    public boolean visualImpaired;
+    public boolean textDescriptions;
+    public boolean original;
+    public boolean commentary;
+    public boolean lacing = true;
+    public long minCache;
+    public long maxCache;
+    public long defaultDuration;
+    public long defaultDecodedFieldDuration;
+    public double trackTimestampScale = 1.0;
+    public long trackOffset;
+    public long maxBlockAdditionId;
+    public String name;
+    public String language = "eng";
+    public String languageBcp47;
+    public String codecId;
+    public byte[] codecPrivate;
+    public String codecName;
+    public long attachmentLink;
+    public boolean codecDecodeAll = true;
+    public long trackOverlay;
+    public long codecDelay;
+    public long seekPreRoll;
+
+    // Video
+    public boolean interlaced;
+    public long fieldOrder;
+    public long stereoMode;
+    public long alphaMode;
+    public long pixelWidth;
+    public long pixelHeight;
+    public long displayWidth;
+    public long displayHeight;
+    public long aspectRatioType;
+    public long matrixCoefficients = 2;
+    public long bitsPerChannel;
+    public long chromaSubsamplingHorz;
+    public long chromaSubsamplingVert;
+    public long range;
+    public long transferCharacteristics = 2;
+    public long primaries = 2;
+    public long maxCll;
+    public long maxFall;
+    public long projectionType;
+    public byte[] projectionPrivate;
+    public double projectionPoseYaw;
+    public double projectionPosePitch;
+    public double projectionPoseRoll;
+
+    // Audio
+    public double samplingFrequency = 8000.0;
+    public double outputSamplingFrequency;
+    public long channels = 1;
+    public long bitDepth;
+
+    // BlockAdditionMapping
+    public long blockAddIdValue;
+    public String blockAddIdName;
+    public long blockAddIdType;
+    public byte[] blockAddIdExtraData;
+
+    // TrackTranslate
+    public byte[] trackTranslateTrackId;
+    public long trackTranslateCodec;
+    public long trackTranslateEditionUid;
+
+    // ContentEncoding
+    public long contentEncodingOrder;
+    public long contentEncodingScope = 1;
+    public long contentEncodingType;
+    public long contentCompAlgo;
+    public byte[] contentCompSettings;
+    public long contentEncAlgo;
+    public byte[] contentEncKeyId;
+    public long aesSettingsCipherMode;
+
+    public boolean isVideo() {
+      return trackType == VIDEO;
+    }
+
+    public boolean isAudio() {
+      return trackType == AUDIO;
+    }
+  }
+
+  class ChapterAtom {
+
+    public long editionUid;
+    public boolean editionDefault;
+    public boolean editionOrdered;
+    public long uid;
+    public String stringUid;
+    public long timeStart;
+    public long timeEnd;
+    public boolean hidden;
+    public String title;
+    public String language = "eng";
+  }
+
+  class AttachedFile {
+
+    public String description;
+    public String name;
+    public byte[] data;
+    public long uid;
+  }
+
+  class Tag {
+
+    public long targetTypeValue = 50;
+    public String targetType;
+    public long trackUid;
+    public long editionUid;
+    public long chapterUid;
+    public long attachmentUid;
+    public final List<SimpleTag> simpleTags = new ArrayList<>();
+  }
+
+  class SimpleTag {
+
+    public String name;
+    public String language = "und";
+    public boolean isDefault = true;
+    public String string;
+    public byte[] binary;
+    public final List<SimpleTag> children = new ArrayList<>();
+  }
+}
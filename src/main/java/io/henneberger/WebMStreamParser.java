@@ -0,0 +1,242 @@
+package io.henneberger;
+
+import static io.henneberger.WebMDecoder.ATTACHMENTS;
+import static io.henneberger.WebMDecoder.BLOCK_GROUP;
+import static io.henneberger.WebMDecoder.CHAPTERS;
+import static io.henneberger.WebMDecoder.CLUSTER;
+import static io.henneberger.WebMDecoder.CUES;
+import static io.henneberger.WebMDecoder.EBML;
+import static io.henneberger.WebMDecoder.INFO;
+import static io.henneberger.WebMDecoder.SEEK_HEAD;
+import static io.henneberger.WebMDecoder.SEGMENT;
+import static io.henneberger.WebMDecoder.SIMPLE_BLOCK;
+import static io.henneberger.WebMDecoder.TAGS;
+import static io.henneberger.WebMDecoder.TIMESTAMP;
+import static io.henneberger.WebMDecoder.TRACKS;
+import static io.henneberger.WebMDecoder.UNKNOWN_SIZE;
+import static io.henneberger.WebMDecoder.endsCluster;
+import static io.henneberger.WebMDecoder.isTopLevel;
+
+import io.netty.buffer.ByteBuf;
+import io.vertx.core.buffer.Buffer;
+import java.io.IOException;
+
+/**
+ * Push-mode WebM parser for live input. Chunks may split elements at any byte; partial element
+ * headers are kept between calls to {@link #feed(Buffer)} and each element is reported to the
+ * {@link WebMHandler} as soon as its last byte arrives. Segment and Cluster are descended into,
+ * everything else the handler cares about is collected and decoded by {@link WebMDecoder}, and the
+ * rest is skipped without being copied.
+ *
+ * <p>The parser never blocks and never looks at a byte twice, so it can be fed directly from an
+ * event loop. It is not thread safe.
+ */
+public class WebMStreamParser {
+
+  private static final int MAX_ELEMENT_SIZE = 16 * 1024 * 1024;
+  private static final int MAX_DEPTH = 4;
+
+  // Parser states
+  private static final int READ_ID = 0;
+  private static final int READ_SIZE = 1;
+  private static final int READ_BODY = 2;
+  private static final int SKIP_BODY = 3;
+
+  private final WebMHandler handler;
+  private final WebMDecoder decoder;
+
+  private int state = READ_ID;
+  private long position;
+
+  // Partially read VINT
+  private int vintLength;
+  private int vintRead;
+  private long vintValue;
+
+  // Current element
+  private long elementStart;
+  private long elementId;
+  private long elementSize;
+  private long bodyRemaining;
+  private Buffer body;
+
+  // Open master elements (Segment, Cluster), innermost last
+  private final long[] masterIds = new long[MAX_DEPTH];
+  private final long[] masterEnds = new long[MAX_DEPTH];
+  private int depth;
+  private long clusterPosition = -1;
+
+  public WebMStreamParser(WebMHandler handler) {
+    this.handler = handler;
+    this.decoder = new WebMDecoder(handler);
+  }
+
+  /**
+   * Stream position of the header of the current Cluster, or -1 before the first one. During
+   * {@link WebMHandler#onClusterStart} this is where the Cluster that just started begins.
+   */
+  public long clusterPosition() {
+    return clusterPosition;
+  }
+
+  /**
+   * Total number of bytes fed so far.
+   */
+  public long position() {
+    return position;
+  }
+
+  public void feed(Buffer chunk) throws IOException {
+    long chunkStart = position;
+    int offset = 0;
+    int end = chunk.length();
+    while (offset < end) {
+      switch (state) {
+        case READ_ID:
+          if (vintRead == 0) {
+            elementStart = chunkStart + offset;
+            closeMasters(elementStart);
+          }
+          offset = readVint(chunk, offset, end);
+          if (vintRead == vintLength) {
+            elementId = vintValue;
+            vintRead = 0;
+            state = READ_SIZE;
+          }
+          break;
+        case READ_SIZE:
+          offset = readVint(chunk, offset, end);
+          if (vintRead == vintLength) {
+            long valueMask = (1L << (7 * vintLength)) - 1;
+            elementSize = vintValue & valueMask;
+            if (elementSize == valueMask) {
+              elementSize = UNKNOWN_SIZE;
+            }
+            vintRead = 0;
+            offset = startElement(chunk, offset, end, chunkStart + offset);
+          }
+          break;
+        case READ_BODY:
+          int n = (int) Math.min(bodyRemaining, end - offset);
+          body.appendBuffer(chunk, offset, n);
+          offset += n;
+          bodyRemaining -= n;
+          if (bodyRemaining == 0) {
+            Buffer complete = body;
+            body = null;
+            state = READ_ID;
+            parse(complete.getByteBuf());
+          }
+          break;
+        case SKIP_BODY:
+          long skip = Math.min(bodyRemaining, end - offset);
+          offset += (int) skip;
+          bodyRemaining -= skip;
+          if (bodyRemaining == 0) {
+            state = READ_ID;
+          }
+          break;
+        default:
+          throw new IllegalStateException("Unknown parser state: " + state);
+      }
+    }
+    position = chunkStart + end;
+  }
+
+  private int readVint(Buffer chunk, int offset, int end) throws IOException {
+    if (vintRead == 0) {
+      int firstByte = chunk.getUnsignedByte(offset++);
+      if (firstByte == 0) {
+        throw new IOException("Invalid EBML VINT leading bits at " + (position + offset - 1));
+      }
+      vintLength = Integer.numberOfLeadingZeros(firstByte) - 23;
+      vintValue = firstByte;
+      vintRead = 1;
+    }
+    while (vintRead < vintLength && offset < end) {
+      vintValue = (vintValue << 8) | chunk.getUnsignedByte(offset++);
+      vintRead++;
+    }
+    return offset;
+  }
+
+  private int startElement(Buffer chunk, int offset, int end, long bodyStart)
+      throws IOException {
+    boolean unknownSize = elementSize == UNKNOWN_SIZE;
+    if (elementId == EBML || elementId == SEGMENT) {
+      // A new stream starts, e.g. the broadcaster restarted its recorder
+      depth = 0;
+    } else if (depth > 0 && masterIds[depth - 1] == CLUSTER && endsCluster(elementId)) {
+      // The next Cluster or a level 1 element ends an unknown-size Cluster
+      depth--;
+    }
+
+    if (elementId == SEGMENT || elementId == CLUSTER) {
+      if (depth == MAX_DEPTH) {
+        throw new IOException("EBML nesting too deep at " + bodyStart);
+      }
+      if (elementId == CLUSTER) {
+        clusterPosition = elementStart;
+      }
+      masterIds[depth] = elementId;
+      masterEnds[depth] = unknownSize ? Long.MAX_VALUE : bodyStart + elementSize;
+      depth++;
+      if (elementId == SEGMENT) {
+        handler.onSegmentStart(elementSize);
+      }
+      state = READ_ID;
+      return offset;
+    }
+
+    if (unknownSize) {
+      throw new IOException(
+          "Unknown size not allowed for element " + Long.toHexString(elementId));
+    }
+
+    if (!isParsed(elementId)) {
+      bodyRemaining = elementSize;
+      state = bodyRemaining == 0 ? READ_ID : SKIP_BODY;
+      return offset;
+    }
+
+    if (elementSize > MAX_ELEMENT_SIZE) {
+      throw new IOException("Element " + Long.toHexString(elementId) + " too large: "
+          + elementSize);
+    }
+
+    state = READ_ID;
+    if (end - offset >= elementSize) {
+      // Entirely inside this chunk, decode in place
+      int size = (int) elementSize;
+      parse(chunk.getByteBuf().slice(offset, size));
+      return offset + size;
+    }
+
+    body = Buffer.buffer((int) elementSize);
+    body.appendBuffer(chunk, offset, end - offset);
+    bodyRemaining = elementSize - (end - offset);
+    state = READ_BODY;
+    return end;
+  }
+
+  private void parse(ByteBuf data) throws IOException {
+    decoder.parseElement(elementId, elementSize, data.nioBuffer());
+  }
+
+  private void closeMasters(long at) {
+    while (depth > 0 && masterEnds[depth - 1] <= at) {
+      depth--;
+    }
+  }
+
+  private boolean isParsed(long id) {
+    if (depth == 0) {
+      return id == EBML;
+    }
+    if (masterIds[depth - 1] == CLUSTER) {
+      return id == TIMESTAMP || id == SIMPLE_BLOCK || id == BLOCK_GROUP;
+    }
+    return isTopLevel(id);
+  }
+
+}
@@ -0,0 +1,557 @@
+package io.henneberger;
+
+import static io.henneberger.WebMDecoder.AUDIO;
+import static io.henneberger.WebMDecoder.BIT_DEPTH;
+import static io.henneberger.WebMDecoder.CHANNELS;
+import static io.henneberger.WebMDecoder.CLUSTER;
+import static io.henneberger.WebMDecoder.CODEC_DELAY;
+import static io.henneberger.WebMDecoder.CODEC_ID;
+import static io.henneberger.WebMDecoder.CODEC_NAME;
+import static io.henneberger.WebMDecoder.CODEC_PRIVATE;
+import static io.henneberger.WebMDecoder.CUES;
+import static io.henneberger.WebMDecoder.CUE_CLUSTER_POSITION;
+import static io.henneberger.WebMDecoder.CUE_POINT;
+import static io.henneberger.WebMDecoder.CUE_TIME;
+import static io.henneberger.WebMDecoder.CUE_TRACK;
+import static io.henneberger.WebMDecoder.CUE_TRACK_POSITIONS;
+import static io.henneberger.WebMDecoder.DEFAULT_DURATION;
+import static io.henneberger.WebMDecoder.DISPLAY_HEIGHT;
+import static io.henneberger.WebMDecoder.DISPLAY_WIDTH;
+import static io.henneberger.WebMDecoder.DOC_TYPE;
+import static io.henneberger.WebMDecoder.DOC_TYPE_READ_VERSION;
+import static io.henneberger.WebMDecoder.DOC_TYPE_VERSION;
+import static io.henneberger.WebMDecoder.DURATION;
+import static io.henneberger.WebMDecoder.EBML;
+import static io.henneberger.WebMDecoder.EBML_MAX_ID_LENGTH;
+import static io.henneberger.WebMDecoder.EBML_MAX_SIZE_LENGTH;
+import static io.henneberger.WebMDecoder.EBML_READ_VERSION;
+import static io.henneberger.WebMDecoder.EBML_VERSION;
+import static io.henneberger.WebMDecoder.FLAG_DEFAULT;
+import static io.henneberger.WebMDecoder.FLAG_ENABLED;
+import static io.henneberger.WebMDecoder.FLAG_LACING;
+import static io.henneberger.WebMDecoder.INFO;
+import static io.henneberger.WebMDecoder.LANGUAGE;
+import static io.henneberger.WebMDecoder.MUXING_APP;
+import static io.henneberger.WebMDecoder.NAME;
+import static io.henneberger.WebMDecoder.PIXEL_HEIGHT;
+import static io.henneberger.WebMDecoder.PIXEL_WIDTH;
+import static io.henneberger.WebMDecoder.SAMPLING_FREQUENCY;
+import static io.henneberger.WebMDecoder.SEEK;
+import static io.henneberger.WebMDecoder.SEEK_HEAD;
+import static io.henneberger.WebMDecoder.SEEK_ID;
+import static io.henneberger.WebMDecoder.SEEK_POSITION;
+import static io.henneberger.WebMDecoder.SEEK_PRE_ROLL;
+import static io.henneberger.WebMDecoder.SEGMENT;
+import static io.henneberger.WebMDecoder.SEGMENT_UUID;
+import static io.henneberger.WebMDecoder.SIMPLE_BLOCK;
+import static io.henneberger.WebMDecoder.TIMESTAMP;
+import static io.henneberger.WebMDecoder.TIMESTAMP_SCALE;
+import static io.henneberger.WebMDecoder.TITLE;
+import static io.henneberger.WebMDecoder.TRACKS;
+import static io.henneberger.WebMDecoder.TRACK_ENTRY;
+import static io.henneberger.WebMDecoder.TRACK_NUMBER;
+import static io.henneberger.WebMDecoder.TRACK_TYPE;
+import static io.henneberger.WebMDecoder.TRACK_UID;
+import static io.henneberger.WebMDecoder.VIDEO;
+import static io.henneberger.WebMDecoder.VOID;
+import static io.henneberger.WebMDecoder.WRITING_APP;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Writes WebM to a channel through a reusable direct buffer. Master elements are opened with an
+ * unknown size and patched when they are closed, in the buffer while they are still in it and
+ * otherwise in the channel if it is seekable.
+ *
+ * <p>On a {@link SeekableByteChannel} {@link #finish()} produces a finalized file with Segment size,
+ * Duration, Cues and a SeekHead. On any other channel the output is a live stream: the Segment
+ * stays unknown-size and a Cluster only gets its size if it was still buffered when it ended.
+ *
+ * <p>Block payloads are copied straight from the caller's buffer and nothing is allocated per
+ * block. Not thread safe.
+ */
+public class WebMWriter {
+
+  private static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+  private static final long UNKNOWN = 0x01FFFFFFFFFFFFFFL;
+  // Space after the Segment header that finish() overwrites with the SeekHead
+  private static final int SEEK_HEAD_RESERVED = 96;
+
+  private final WritableByteChannel out;
+  private final SeekableByteChannel seekable;
+  private final ByteBuffer patch = ByteBuffer.allocateDirect(8);
+  private ByteBuffer buffer;
+  // Channel position of the first buffered byte
+  private long flushed;
+  // Open metadata masters; the buffer grows instead of flushing while any is open
+  private int pinned;
+
+  // Absolute positions, -1 when not written
+  private long segmentSizeAt = -1;
+  private long segmentStart;
+  private long seekHeadAt = -1;
+  private long infoAt = -1;
+  private long tracksAt = -1;
+  private long durationAt = -1;
+
+  private long clusterAt = -1;
+  private long clusterTimecode;
+  private boolean clusterCued;
+  private long cueTrack = 1;
+  private long endTimecode;
+
+  private long[] cueTimes = new long[64];
+  private long[] cuePositions = new long[64];
+  private int cueCount;
+
+  public WebMWriter(WritableByteChannel out) throws IOException {
+    this(out, DEFAULT_BUFFER_SIZE);
+  }
+
+  public WebMWriter(WritableByteChannel out, int bufferSize) throws IOException {
+    this.out = out;
+    this.seekable = out instanceof SeekableByteChannel ? (SeekableByteChannel) out : null;
+    this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    this.flushed = seekable != null ? seekable.position() : 0;
+  }
+
+  /**
+   * Number of bytes written so far, including those still buffered.
+   */
+  public long position() {
+    return flushed + buffer.position();
+  }
+
+  /**
+   * Writes an EBML header for WebM.
+   */
+  public void writeEbmlHeader() throws IOException {
+    WebMHandler.EbmlHeader header = new WebMHandler.EbmlHeader();
+    header.docType = "webm";
+    header.docTypeVersion = 4;
+    header.docTypeReadVersion = 2;
+    writeEbmlHeader(header);
+  }
+
+  public void writeEbmlHeader(WebMHandler.EbmlHeader header) throws IOException {
+    long at = openMaster(EBML);
+    putUnsigned(EBML_VERSION, header.version);
+    putUnsigned(EBML_READ_VERSION, header.readVersion);
+    putUnsigned(EBML_MAX_ID_LENGTH, header.maxIdLength);
+    putUnsigned(EBML_MAX_SIZE_LENGTH, header.maxSizeLength);
+    putString(DOC_TYPE, header.docType);
+    putUnsigned(DOC_TYPE_VERSION, header.docTypeVersion);
+    putUnsigned(DOC_TYPE_READ_VERSION, header.docTypeReadVersion);
+    closeMaster(at);
+  }
+
+  /**
+   * Starts the Segment. On a seekable channel space for the SeekHead is reserved after it.
+   */
+  public void startSegment() throws IOException {
+    ensure(12 + SEEK_HEAD_RESERVED);
+    putId(SEGMENT);
+    segmentSizeAt = position();
+    buffer.putLong(UNKNOWN);
+    segmentStart = position();
+    if (seekable != null) {
+      seekHeadAt = position();
+      putVoid(SEEK_HEAD_RESERVED);
+    }
+  }
+
+  /**
+   * Writes the Segment Info. On a seekable channel a Duration is always written, and set by
+   * {@link #finish()} to the last block timecode.
+   */
+  public void writeSegmentInfo(WebMHandler.SegmentInfo info) throws IOException {
+    infoAt = position();
+    long at = openMaster(INFO);
+    putUnsigned(TIMESTAMP_SCALE, info.timestampScale);
+    if (seekable != null || !Double.isNaN(info.duration)) {
+      putFloat(DURATION, Double.isNaN(info.duration) ? 0 : info.duration);
+      durationAt = position() - 8;
+    }
+    putBytes(SEGMENT_UUID, info.segmentUuid);
+    putString(TITLE, info.title);
+    putString(MUXING_APP, info.muxingApp != null ? info.muxingApp : "WebMWriter");
+    putString(WRITING_APP, info.writingApp != null ? info.writingApp : "WebMWriter");
+    closeMaster(at);
+  }
+
+  /**
+   * Writes the Tracks. Cues are written for the keyframes of the first video track, or of the
+   * first track if there is no video.
+   */
+  public void writeTracks(WebMHandler.TrackEntry... tracks) throws IOException {
+    if (tracks.length > 0) {
+      cueTrack = tracks[0].trackNumber;
+      for (WebMHandler.TrackEntry track : tracks) {
+        if (track.isVideo()) {
+          cueTrack = track.trackNumber;
+          break;
+        }
+      }
+    }
+    tracksAt = position();
+    long at = openMaster(TRACKS);
+    for (WebMHandler.TrackEntry track : tracks) {
+      writeTrackEntry(track);
+    }
+    closeMaster(at);
+  }
+
+  private void writeTrackEntry(WebMHandler.TrackEntry track) throws IOException {
+    long at = openMaster(TRACK_ENTRY);
+    putUnsigned(TRACK_NUMBER, track.trackNumber);
+    putUnsigned(TRACK_UID, track.trackUid != 0 ? track.trackUid : track.trackNumber);
+    putUnsigned(TRACK_TYPE, track.trackType);
+    if (!track.enabled) {
+      putUnsigned(FLAG_ENABLED, 0);
+    }
+    if (!track.isDefault) {
+      putUnsigned(FLAG_DEFAULT, 0);
+    }
+    if (!track.lacing) {
+      putUnsigned(FLAG_LACING, 0);
+    }
+    if (track.defaultDuration != 0) {
+      putUnsigned(DEFAULT_DURATION, track.defaultDuration);
+    }
+    putString(NAME, track.name);
+    if (!"eng".equals(track.language)) {
+      putString(LANGUAGE, track.language);
+    }
+    putString(CODEC_ID, track.codecId);
+    putBytes(CODEC_PRIVATE, track.codecPrivate);
+    putString(CODEC_NAME, track.codecName);
+    if (track.codecDelay != 0) {
+      putUnsigned(CODEC_DELAY, track.codecDelay);
+    }
+    if (track.seekPreRoll != 0) {
+      putUnsigned(SEEK_PRE_ROLL, track.seekPreRoll);
+    }
+    if (track.isVideo()) {
+      long video = openMaster(VIDEO);
+      putUnsigned(PIXEL_WIDTH, track.pixelWidth);
+      putUnsigned(PIXEL_HEIGHT, track.pixelHeight);
+      if (track.displayWidth != 0) {
+        putUnsigned(DISPLAY_WIDTH, track.displayWidth);
+      }
+      if (track.displayHeight != 0) {
+        putUnsigned(DISPLAY_HEIGHT, track.displayHeight);
+      }
+      closeMaster(video);
+    } else if (track.isAudio()) {
+      long audio = openMaster(AUDIO);
+      putFloat(SAMPLING_FREQUENCY, track.samplingFrequency);
+      putUnsigned(CHANNELS, track.channels);
+      if (track.bitDepth != 0) {
+        putUnsigned(BIT_DEPTH, track.bitDepth);
+      }
+      closeMaster(audio);
+    }
+    closeMaster(at);
+  }
+
+  /**
+   * Ends the current Cluster, if any, and starts a new one at {@code timecode}.
+   */
+  public void startCluster(long timecode) throws IOException {
+    endCluster();
+    ensure(24);
+    clusterAt = position();
+    putId(CLUSTER);
+    buffer.putLong(UNKNOWN);
+    putUnsigned(TIMESTAMP, timecode);
+    clusterTimecode = timecode;
+    clusterCued = false;
+  }
+
+  /**
+   * Ends the current Cluster. Starting the next one or finishing does this as well.
+   */
+  public void endCluster() throws IOException {
+    if (clusterAt >= 0) {
+      long sizeAt = clusterAt + 4;
+      patchSize(sizeAt, position() - sizeAt - 8);
+      clusterAt = -1;
+    }
+  }
+
+  /**
+   * Writes one frame as a SimpleBlock in the current Cluster. Lacing bits in {@code flags} are
+   * ignored. The bytes between the position and limit of {@code payload} are copied; its position
+   * is left unchanged.
+   */
+  public void writeSimpleBlock(long trackNumber, int relativeTimecode, int flags,
+      ByteBuffer payload) throws IOException {
+    if (clusterAt < 0) {
+      throw new IllegalStateException("SimpleBlock outside of a Cluster");
+    }
+    int trackLength = sizeLength(trackNumber);
+    ensure(1 + 8 + trackLength + 3);
+    buffer.put((byte) SIMPLE_BLOCK);
+    putSize(trackLength + 3 + payload.remaining());
+    putVint(trackNumber, trackLength);
+    buffer.putShort((short) relativeTimecode);
+    buffer.put((byte) (flags & ~WebMHandler.LACING));
+    putPayload(payload);
+
+    long timecode = clusterTimecode + relativeTimecode;
+    if (timecode > endTimecode) {
+      endTimecode = timecode;
+    }
+    if (!clusterCued && trackNumber == cueTrack && (flags & WebMHandler.KEYFRAME) != 0) {
+      addCue(timecode, clusterAt - segmentStart);
+      clusterCued = true;
+    }
+  }
+
+  /**
+   * Hands everything buffered to the channel. Live output calls this whenever the bytes should
+   * reach the viewer, typically after each block or Cluster.
+   */
+  public void flush() throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      flushed += out.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  /**
+   * Ends the current Cluster and flushes. On a seekable channel the Cues are written after the last
+   * Cluster, and the Segment size, Duration and SeekHead are filled in.
+   */
+  public void finish() throws IOException {
+    endCluster();
+    if (seekable == null || segmentSizeAt < 0) {
+      flush();
+      return;
+    }
+    long cuesAt = cueCount > 0 ? writeCues() : -1;
+    flush();
+    long end = position();
+    patchSize(segmentSizeAt, end - segmentStart);
+    if (durationAt >= 0) {
+      patch.clear();
+      patch.putDouble(endTimecode).flip();
+      writeAt(durationAt, patch);
+    }
+
+    // Built in the empty buffer and written over the reserved Void
+    long at = openMaster(SEEK_HEAD);
+    putSeek(INFO, infoAt);
+    putSeek(TRACKS, tracksAt);
+    putSeek(CUES, cuesAt);
+    closeMaster(at);
+    putVoid(SEEK_HEAD_RESERVED - buffer.position());
+    buffer.flip();
+    writeAt(seekHeadAt, buffer);
+    buffer.clear();
+  }
+
+  private long writeCues() throws IOException {
+    long cuesAt = position();
+    long at = openMaster(CUES);
+    for (int i = 0; i < cueCount; i++) {
+      long point = openMaster(CUE_POINT);
+      putUnsigned(CUE_TIME, cueTimes[i]);
+      long positions = openMaster(CUE_TRACK_POSITIONS);
+      putUnsigned(CUE_TRACK, cueTrack);
+      putUnsigned(CUE_CLUSTER_POSITION, cuePositions[i]);
+      closeMaster(positions);
+      closeMaster(point);
+    }
+    closeMaster(at);
+    return cuesAt;
+  }
+
+  private void putSeek(int id, long at) throws IOException {
+    if (at < 0) {
+      return;
+    }
+    long seek = openMaster(SEEK);
+    ensure(7);
+    putId(SEEK_ID);
+    putSize(4);
+    buffer.putInt(id);
+    putUnsigned(SEEK_POSITION, at - segmentStart);
+    closeMaster(seek);
+  }
+
+  private void addCue(long timecode, long clusterPosition) {
+    if (cueCount == cueTimes.length) {
+      cueTimes = Arrays.copyOf(cueTimes, cueCount * 2);
+      cuePositions = Arrays.copyOf(cuePositions, cueCount * 2);
+    }
+    cueTimes[cueCount] = timecode;
+    cuePositions[cueCount] = clusterPosition;
+    cueCount++;
+  }
+
+  /**
+   * Starts a metadata master element and returns the position of its size field.
+   */
+  private long openMaster(int id) throws IOException {
+    ensure(12);
+    putId(id);
+    long sizeAt = position();
+    buffer.putLong(UNKNOWN);
+    pinned++;
+    return sizeAt;
+  }
+
+  private void closeMaster(long sizeAt) throws IOException {
+    pinned--;
+    patchSize(sizeAt, position() - sizeAt - 8);
+  }
+
+  /**
+   * Replaces the unknown size at {@code sizeAt}. An element already sent on a live channel keeps
+   * its unknown size, which is valid for Segment and Cluster.
+   */
+  private void patchSize(long sizeAt, long size) throws IOException {
+    long value = 0x0100000000000000L | size;
+    if (sizeAt >= flushed) {
+      buffer.putLong((int) (sizeAt - flushed), value);
+    } else if (seekable != null) {
+      patch.clear();
+      patch.putLong(value).flip();
+      writeAt(sizeAt, patch);
+    }
+  }
+
+  private void writeAt(long at, ByteBuffer data) throws IOException {
+    long position = seekable.position();
+    seekable.position(at);
+    while (data.hasRemaining()) {
+      seekable.write(data);
+    }
+    seekable.position(position);
+  }
+
+  private void putPayload(ByteBuffer payload) throws IOException {
+    int start = payload.position();
+    if (payload.remaining() > buffer.remaining()) {
+      flush();
+    }
+    if (payload.remaining() > buffer.remaining()) {
+      while (payload.hasRemaining()) {
+        flushed += out.write(payload);
+      }
+    } else {
+      buffer.put(payload);
+    }
+    payload.position(start);
+  }
+
+  /**
+   * Makes room for {@code length} more bytes, flushing unless a metadata master is open.
+   */
+  private void ensure(int length) throws IOException {
+    if (buffer.remaining() >= length) {
+      return;
+    }
+    if (pinned == 0) {
+      flush();
+    }
+    if (buffer.remaining() < length) {
+      int capacity = Math.max(buffer.capacity() * 2, buffer.position() + length);
+      ByteBuffer grown = ByteBuffer.allocateDirect(capacity);
+      buffer.flip();
+      grown.put(buffer);
+      buffer = grown;
+    }
+  }
+
+  private void putId(int id) {
+    if ((id & 0xFF000000) != 0) {
+      buffer.putInt(id);
+    } else if ((id & 0xFF0000) != 0) {
+      buffer.put((byte) (id >>> 16)).putShort((short) id);
+    } else if ((id & 0xFF00) != 0) {
+      buffer.putShort((short) id);
+    } else {
+      buffer.put((byte) id);
+    }
+  }
+
+  private void putSize(long size) {
+    putVint(size, sizeLength(size));
+  }
+
+  private void putVint(long value, int length) {
+    long vint = value | (1L << (7 * length));
+    for (int shift = 8 * (length - 1); shift >= 0; shift -= 8) {
+      buffer.put((byte) (vint >>> shift));
+    }
+  }
+
+  /**
+   * Shortest VINT length for {@code value}, avoiding the all-ones pattern reserved for unknown.
+   */
+  private static int sizeLength(long value) {
+    int length = 1;
+    while (length < 8 && value >= (1L << (7 * length)) - 1) {
+      length++;
+    }
+    return length;
+  }
+
+  private void putUnsigned(int id, long value) throws IOException {
+    int length = Math.max(1, 8 - Long.numberOfLeadingZeros(value) / 8);
+    ensure(4 + 1 + length);
+    putId(id);
+    putSize(length);
+    for (int shift = 8 * (length - 1); shift >= 0; shift -= 8) {
+      buffer.put((byte) (value >>> shift));
+    }
+  }
+
+  private void putFloat(int id, double value) throws IOException {
+    ensure(4 + 1 + 8);
+    putId(id);
+    putSize(8);
+    buffer.putDouble(value);
+  }
+
+  private void putString(int id, String value) throws IOException {
+    if (value != null) {
+      putBytes(id, value.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  private void putBytes(int id, byte[] value) throws IOException {
+    if (value == null) {
+      return;
+    }
+    ensure(4 + 8 + value.length);
+    putId(id);
+    putSize(value.length);
+    buffer.put(value);
+  }
+
+  private void putVoid(int length) {
+    if (length <= 0) {
+      return;
+    }
+    buffer.put((byte) VOID);
+    if (length >= 9) {
+      putVint(length - 9, 8);
+      length -= 9;
+    } else {
+      putVint(length - 2, 1);
+      length -= 2;
+    }
+    for (int i = 0; i < length; i++) {
+      buffer.put((byte) 0);
+    }
+  }
+}
@@ -0,0 +1,111 @@
+package io.henneberger;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.DefaultFileRegion;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.ServerWebSocket;
+import io.vertx.core.http.impl.WebSocketInternal;
+import java.io.File;
+
+/**
+ * A /watch socket. The MIME type is sent as a text message, which the player also takes as the
+ * signal to discard the Cluster it was cut off in, and the bytes as binary messages.
+ *
+ * <p>Live chunks are written as frames encoded once per chunk by {@link #binaryFrame}, straight to
+ * the socket's channel, so the WebSocket encoder has nothing left to do for each viewer.
+ */
+class WebSocketViewer extends Viewer {
+
+  final ServerWebSocket socket;
+  private final ChannelHandlerContext channel;
+
+  WebSocketViewer(ServerWebSocket socket) {
+    this.socket = socket;
+    this.channel = ((WebSocketInternal) socket).channelHandlerContext();
+    socket.setWriteQueueMaxSize(MAX_QUEUE_SIZE);
+  }
+
+  /**
+   * Encodes {@code payload} as a single unmasked binary WebSocket frame, header included, in a
+   * pooled direct buffer that each viewer writes a retained duplicate of. The caller releases it.
+   */
+  static ByteBuf binaryFrame(Buffer payload) {
+    ByteBuf frame = frameHeader(payload.length(), payload.length());
+    frame.writeBytes(payload.getByteBuf());
+    return frame;
+  }
+
+  /**
+   * The header of a binary frame of {@code length} bytes, in a buffer with room for {@code extra}
+   * more.
+   */
+  private static ByteBuf frameHeader(long length, int extra) {
+    int headerLength = length < 126 ? 2 : length <= 0xFFFF ? 4 : 10;
+    ByteBuf frame = PooledByteBufAllocator.DEFAULT.directBuffer(headerLength + extra);
+    frame.writeByte(0x82); // FIN, binary
+    if (length < 126) {
+      frame.writeByte((int) length);
+    } else if (length <= 0xFFFF) {
+      frame.writeByte(126);
+      frame.writeShort((int) length);
+    } else {
+      frame.writeByte(127);
+      frame.writeLong(length);
+    }
+    return frame;
+  }
+
+  @Override
+  String transport() {
+    return "websocket";
+  }
+
+  @Override
+  long queuedBytes() {
+    return queuedBytes(channel);
+  }
+
+  @Override
+  boolean writeQueueFull() {
+    return socket.writeQueueFull();
+  }
+
+  @Override
+  void drainHandler(Handler<Void> handler) {
+    socket.drainHandler(handler);
+  }
+
+  @Override
+  void close() {
+    socket.close();
+  }
+
+  @Override
+  void writeType(String mimeType) {
+    socket.writeTextMessage(mimeType);
+  }
+
+  @Override
+  void write(Buffer bytes) {
+    socket.writeBinaryMessage(bytes);
+  }
+
+  @Override
+  void writeChunk(ByteBuf frame, int length) {
+    channel.write(frame.retainedDuplicate(), channel.voidPromise());
+  }
+
+  @Override
+  void flush() {
+    channel.flush();
+  }
+
+  @Override
+  void sendFile(File file, long offset, long length) {
+    channel.write(frameHeader(length, 0), channel.voidPromise());
+    channel.writeAndFlush(new DefaultFileRegion(file, offset, length), channel.voidPromise());
+  }
+}